@@ -1,13 +1,29 @@
+import com.redhat.middleware.keynote.AchievementCache
+import com.redhat.middleware.keynote.BinaryProtocol
+import com.redhat.middleware.keynote.Broadcast
+import com.redhat.middleware.keynote.GameMetrics
 import com.redhat.middleware.keynote.GameUtils
+import com.redhat.middleware.keynote.KieCommandWriter
+import com.redhat.middleware.keynote.KieResponseParser
+import com.redhat.middleware.keynote.LocalSession
+import com.redhat.middleware.keynote.NameService
+import com.redhat.middleware.keynote.PlayerNameCache
+import com.redhat.middleware.keynote.PlayerScore
+import com.redhat.middleware.keynote.PopAccumulator
+import com.redhat.middleware.keynote.TeamBalancer
+import com.redhat.middleware.keynote.TrafficSampler
 import io.vertx.core.CompositeFuture
 import io.vertx.core.Future
 import io.vertx.core.Handler
+import io.vertx.core.eventbus.DeliveryOptions
 import io.vertx.core.json.Json
+import io.vertx.groovy.core.buffer.Buffer
 import io.vertx.groovy.core.eventbus.EventBus
 import io.vertx.groovy.core.eventbus.Message
 import io.vertx.groovy.core.http.HttpClient
 import io.vertx.groovy.core.shareddata.AsyncMap
 import io.vertx.lang.groovy.GroovyVerticle
+import groovy.transform.CompileStatic
 import java.util.Map
 import io.vertx.core.AsyncResult;
 import io.vertx.core.AsyncResultHandler;
@@ -36,10 +52,7 @@ class GameVerticle extends GroovyVerticle {
           'trafficPercentage': 100
   ]
 
-  private static final Map<String, Map<String, Player>> TEAM_PLAYERS = new HashMap<>();
-
   static final String TEAM_COUNTER_NAME = "redhat.team";
-  static final String TEAM_POP_COUNTER_NAME = "redhat.team.pop";
   static final String PLAYER_NAME_MAP = "redhat.player.name";
 
   // Configuration
@@ -59,6 +72,30 @@ class GameVerticle extends GroovyVerticle {
   String scorePath
   String scoreAuthHeader
 
+  // Score batching, disabled when the window is 0
+  int scoreBatchWindow
+  int scoreBatchSize
+  // Players with a score waiting for the next batch, the score itself is aggregated in the player
+  Set<Player> pendingPlayers = new LinkedHashSet<>()
+  boolean batchInFlight = false
+  long batchTimer = -1
+
+  // Pops are counted locally and flushed to the cluster counters every popFlushInterval ms
+  long popFlushInterval
+  PopAccumulator popAccumulator
+
+  // Teams are assigned by the node, reconciled with the cluster-wide team counters every teamReconcileInterval ms
+  long teamReconcileInterval
+  int teamMaxImbalance
+  TeamBalancer teamBalancer
+
+  // Names are leased from the cluster by blocks of nameBlockSize
+  int nameBlockSize
+  int nameCacheSize
+  long nameCacheTtl
+  def nameBlockCounter
+  NameService nameService
+
   // Verticle fields
 
   // Shared
@@ -66,13 +103,13 @@ class GameVerticle extends GroovyVerticle {
   // Shared
   List<Admin> admins = [];
 
-  def counter;
   def teamCounters = [:];
-  def teamPopCounters = [:];
+  def popEpochCounter
 
   Map adminConfiguration = [:]
 
-  AsyncMap<String, String> playerNames;
+  // Encoded names (Long) by player id
+  AsyncMap<String, Object> playerNames;
 
 
   HttpClient mechanicsClient;
@@ -103,7 +140,16 @@ class GameVerticle extends GroovyVerticle {
 
     num_teams = (int) context.config().get("number-of-teams", 4)
     score_broadcast_interval = (int) context.config().get("score-broadcast-interval", 2500)
+    scoreBatchWindow = (int) context.config().get("score-batch-window", 0)
+    scoreBatchSize = (int) context.config().get("score-batch-size", 100)
+    popFlushInterval = (long) context.config().get("pop-flush-interval", 250)
+    teamReconcileInterval = (long) context.config().get("team-reconcile-interval", 1000)
+    teamMaxImbalance = (int) context.config().get("team-max-imbalance", 5)
+    nameBlockSize = (int) context.config().get("name-block-size", 1024)
+    nameCacheSize = (int) context.config().get("name-cache-size", 20000)
+    nameCacheTtl = (long) context.config().get("name-cache-ttl", 3600000)
     teams = Team.createTeams(num_teams)
+    Broadcast.registerCodec(vertx.getDelegate())
 
     mechanicsClient = vertx.createHttpClient()
     achievementClient = vertx.createHttpClient([
@@ -122,12 +168,11 @@ class GameVerticle extends GroovyVerticle {
 
     // BURR
     // (achievementHost, achievementPort, achievementPath) = retrieveEndpoint("ACHIEVEMENTS_SERVER", testPort, "/testAchievementServer");
-    def achievementPortEnv = System.getenv("ACHIEVEMENTS_SERVER_PORT")?.trim()
-    (achievementHost, achievementPort, achievementPath) = retrieveEndpoint("ACHIEVEMENTS_SERVER", Integer.parseInt(achievementPortEnv), "/api");
+    // Without the port variables, the internal stand-ins are used like in the score timer
+    (achievementHost, achievementPort, achievementPath) = retrieveServiceEndpoint("ACHIEVEMENTS_SERVER", "/api", testPort, "/testAchievementServer");
     println("Achievement Server host: " + achievementHost + ", port " + achievementPort + ", path: " + achievementPath)
     
-    def scorePortEnv = System.getenv("SCORE_SERVER_PORT")?.trim()
-    (scoreHost, scorePort, scorePath) = retrieveEndpoint("SCORE_SERVER", Integer.parseInt(scorePortEnv), "/kie-server/services/rest/server/containers/instances/score");
+    (scoreHost, scorePort, scorePath) = retrieveServiceEndpoint("SCORE_SERVER", "/kie-server/services/rest/server/containers/instances/score", testPort, "/testScoreServer");
     println("Score Server host: " + scoreHost + ", port " + scorePort + ", path: " + scorePath)
 
     def scoreUser = System.getenv("SCORE_USER")?.trim()
@@ -161,14 +206,20 @@ class GameVerticle extends GroovyVerticle {
     eventBus.consumer("/scores", updateTeamScores())
 
     def futures = []
-    futures.add(getTeamCounter())
     futures.addAll(getIndividualTeamCounters())
-    futures.addAll(getIndividualTeamPopCounters())
+    futures.add(retrievePopEpochCounter())
     futures.add(getPlayerNameMap())
+    futures.add(retrieveNameBlockCounter())
     
 
     CompositeFuture.all(futures).setHandler({ ar ->
       if (ar.succeeded()) {
+        popAccumulator = PopAccumulator.share(vertx.getDelegate(), popEpochCounter.getDelegate(), num_teams,
+                popFlushInterval)
+        teamBalancer = TeamBalancer.share(vertx.getDelegate(),
+                teamCounters.collectEntries { k, v -> [k, v.getDelegate()] }, teamReconcileInterval, teamMaxImbalance)
+        nameService = NameService.share(vertx.getDelegate(), nameBlockCounter.getDelegate(),
+                playerNames.getDelegate(), nameBlockSize, new PlayerNameCache(nameCacheSize, nameCacheTtl))
         future.complete();
       } else {
         ar.cause().printStackTrace();
@@ -176,7 +227,7 @@ class GameVerticle extends GroovyVerticle {
       }
     })
 
-    retrieveConfiguration()
+    retrieveConfiguration({ configuration -> setConfiguration(configuration) })
   }
 
   // control the state of the game
@@ -236,22 +287,22 @@ class GameVerticle extends GroovyVerticle {
                 def future = resetAll()
                 future.setHandler({ ar ->
                   if (ar.succeeded()) {
-                    publish("state-change", data);
+                    publishState("state-change", "state", data);
                     data.state = "play"
-                    publish("state-change", data);
+                    publishState("state-change", "state", data);
                   } else {
                     ar.cause().printStackTrace();
                   }
                 })
               } else {
-                publish("state-change", data);
+                publishState("state-change", "state", data);
               }
             } else if (data.type == "selfie-state-change") {
               // KEV - validate data
-              publish("selfie-state-change", data);
+              publishState("selfie-state-change", "selfie-state", data);
             } else if (data.type == "configuration") {
               // KEV - validate data
-              publish("configuration", data.configuration);
+              publishConfiguration(data.configuration);
             }
           }
         }
@@ -267,14 +318,9 @@ class GameVerticle extends GroovyVerticle {
         def message = m.body()['message'];
         String id = message.id
         if (id) {
-          playerNames.get(id, { ar ->
-            if (ar.succeeded()) {
-              String name = ar.result();
-              initializePlayerTeam(id, name, m, eventBus);
-            } else {
-              initializePlayerTeam(null, null, m, eventBus);
-            }
-          });
+          nameService.lookup(id, { String name ->
+            initializePlayerTeam(name ? id : null, name, m, eventBus);
+          } as Handler);
         } else {
           initializePlayerTeam(null, null, m, eventBus);
         }
@@ -283,32 +329,27 @@ class GameVerticle extends GroovyVerticle {
 
   private void initializePlayerTeam(String id, String name, Message<Map> m, EventBus eventBus) {
     def message = m.body()['message'];
-    Team team = (message.team ? teams.get(message.team.toInteger()) : null);
-    if (id && name && team) {
-      initializePlayer(id, name, team, m, eventBus)
+    // A returning player keeps its team while the teams stay balanced
+    int preferred = (id && name && message.team) ? message.team.toInteger() : 0
+    Team team = teams.get(teamBalancer.assign(preferred))
+    if (id && name) {
+      initializePlayer(new Player(id, team, name), m, eventBus)
     } else {
-      // Pick the team and increment counter
-      counter.addAndGet(1, { nar ->
-        int assignment = (nar.result() % num_teams) + 1
-        team = teams.get(assignment)
-        initializePlayer(id, name, team, m, eventBus)
-      });
+      initializeNewPlayer(team, m, eventBus)
     }
   }
 
-  private void initializePlayer(String id, String name, Team team, Message<Map> m, EventBus eventBus) {
-    Player player;
+  private void initializeNewPlayer(Team team, Message<Map> m, EventBus eventBus) {
+    // Generated from the names leased by this node, unique in the cluster
+    nameService.generate({ String name ->
+      Player player = new Player(UUID.randomUUID().toString(), team, name)
+      nameService.register(player.userId, player.username)
+      initializePlayer(player, m, eventBus)
+    } as Handler)
+  }
 
-    if (id && name) {
-      player = new Player(id, team, name);
-    } else {
-      player = new Player(team);
-      playerNames.put(player.userId, player.username, { ar ->
-        if (ar.failed()) {
-          println("Put of player name in async map failed, id " + player.userId + ", name " + player.username)
-        }
-      })
-    }
+  private void initializePlayer(Player player, Message<Map> m, EventBus eventBus) {
+    Team team = player.team
     def teamCounter = teamCounters[team.number]
     if (teamCounter) {
       teamCounter.incrementAndGet({ ar -> });
@@ -316,63 +357,130 @@ class GameVerticle extends GroovyVerticle {
       println("Unexpected team number: " + team.number);
     }
 
-    def consumer = eventBus.<Map> consumer(player.userId + "/message")
-    consumer.handler({ msg ->
-      def event = msg.body()["event"]
-      if (event == "gone") {
+    def consumer = null
+    Runnable onGone = {
+      if (player.session) {
+        player.session.unbind()
+      } else {
         consumer.unregister();
-        team.players.remove(player);
-        teamCounter?.decrementAndGet({ ar -> });
-      } else if (event == "init") {
-        send(player, [
-                type         : 'configuration',
-                team         : player.team.number,
-                playerId     : player.userId,
-                username     : player.username,
-                score        : team.score,
-                configuration: team.configuration
-        ])
-
-        send(player, [
-                type : 'state',
-                state: state
-        ])
-
-        send(player, [
-                type : 'selfie-state',
-                state: selfieState
-        ])
+      }
+      if (team.players.remove(player.userId, player)) {
+        GameMetrics.teamPlayers(team.number).dec()
+        // Handed out again once the fresh names are exhausted, a returning player gets a new name
+        nameService.release(player.userId, player.username)
+      }
+      pendingPlayers.remove(player)
+      teamCounter?.decrementAndGet({ ar -> });
+      teamBalancer.leave(team.number)
+    } as Runnable
+
+    if (m.headers().get(LocalSession.NODE_HEADER) == LocalSession.NODE) {
+      // The socket is managed in this JVM, skip the event bus
+      player.session = LocalSession.bind(player.userId, eventHandler(player, onGone), scoreHandler(player))
+      team.players.add(player.userId, player)
+      GameMetrics.teamPlayers(team.number).inc()
+      replyTeam(m, player)
+    } else {
+      consumer = eventBus.<Map> consumer(player.userId + "/message")
+      consumer.handler(messageHandler(player, onGone)).completionHandler({ x ->
+        team.players.add(player.userId, player)
+        GameMetrics.teamPlayers(team.number).inc()
+        replyTeam(m, player)
+      });
+    }
+  }
+
+  // The handlers receive every frame of the player, statically compiled like the score path they call
+
+  @CompileStatic
+  private Handler<Map> eventHandler(Player player, Runnable onGone) {
+    return { Map body -> onEvent(player, body, onGone) } as Handler<Map>
+  }
+
+  @CompileStatic
+  private LocalSession.ScoreHandler scoreHandler(Player player) {
+    return { int score, int consecutive, boolean goldenSnitchPopped ->
+      handleScore(player, score, consecutive, goldenSnitchPopped, 1)
+    } as LocalSession.ScoreHandler
+  }
+
+  @CompileStatic
+  private Handler<Message<Object>> messageHandler(Player player, Runnable onGone) {
+    return { Message<Object> msg ->
+      Object body = msg.body()
+      if (body instanceof Map) {
+        onEvent(player, (Map) body, onGone)
       } else {
-        Map message = msg.body()["message"];
-        if (message.type == 'score') {
-          // per ballon popped
-          int score = message.getOrDefault('score', 0)
-          
-          int consecutive = message.getOrDefault('consecutive', 0)
-          boolean goldenSnitchPopped = message.getOrDefault('goldenSnitchPopped', false)
-          
-          sendScore(player, score, consecutive, goldenSnitchPopped);
-          
-          teamPopCounters[team.number]?.addAndGet(1, {});
+        // Score frame sent using the binary protocol
+        io.vertx.core.buffer.Buffer frame = (io.vertx.core.buffer.Buffer) ((Buffer) body).getDelegate()
+        handleScore(player, BinaryProtocol.score(frame), BinaryProtocol.consecutive(frame),
+                BinaryProtocol.goldenSnitchPopped(frame), 1)
+      }
+    } as Handler<Message<Object>>
+  }
 
-        } else {
-          println("Unknown message type : " + message.type + " / " + message);
-        }
+  @CompileStatic
+  void onEvent(Player player, Map body, Runnable onGone) {
+    Object event = body.get('event')
+    if ('gone' == event) {
+      onGone.run()
+    } else if ('init' == event) {
+      sendInitialState(player)
+    } else {
+      Map message = (Map) body.get('message')
+      Object type = message.get('type')
+      if ('score' == type) {
+        // per ballon popped, or several pops merged by the throttle of the socket
+        handleScore(player, intValue(message, 'score', 0), intValue(message, 'consecutive', 0),
+                Boolean.TRUE == message.get('goldenSnitchPopped'), intValue(message, 'pops', 1))
+      } else {
+        println("Unknown message type : " + type + " / " + message);
       }
-    }).completionHandler({ x ->
-      team.players.add(player)
-      m.reply(player.userId)
-    });
+    }
+  }
+
+  @CompileStatic
+  private static int intValue(Map message, String key, int defaultValue) {
+    Object value = message.get(key)
+    return value instanceof Number ? ((Number) value).intValue() : defaultValue
+  }
+
+  def sendInitialState(Player player) {
+    send(player, [
+            type         : 'configuration',
+            team         : player.team.number,
+            playerId     : player.userId,
+            username     : player.username,
+            score        : player.team.score,
+            configuration: player.team.configuration
+    ])
+
+    send(player, [
+            type : 'state',
+            state: state
+    ])
+
+    send(player, [
+            type : 'selfie-state',
+            state: selfieState
+    ])
+  }
+
+  // The server verticle subscribes the socket to the team topic
+  private static void replyTeam(Message<Map> m, Player player) {
+    m.getDelegate().reply(player.userId,
+            new DeliveryOptions().addHeader(Broadcast.TEAM_HEADER, player.team.number.toString()))
   }
 
   private Handler<Message> onConfigurationUpdated() {
     { msg ->
       println("Received notification about configuration updates")
-      retrieveConfiguration();
+      // Only one game verticle receives the notification, it publishes the configuration to the others
+      retrieveConfiguration({ configuration -> publishConfiguration(configuration) });
     }
   }
 
-  def retrieveConfiguration() {
+  def retrieveConfiguration(Closure onConfiguration) {
     println("Gonna try to retrieve the configuration")
 
     mechanicsClient.get(configurationPort, configurationHost, configurationPath, { resp ->
@@ -384,7 +492,7 @@ class GameVerticle extends GroovyVerticle {
         resp.bodyHandler { body ->
           Map configuration = Json.decodeValue(body.toString(), Map.class);
           println("Retrieved configuration: " + configuration)
-          setConfiguration(configuration);
+          onConfiguration(configuration);
         }
       } else {
         println("Received error response from Configuration endpoint");
@@ -396,88 +504,58 @@ class GameVerticle extends GroovyVerticle {
     }).end();
   }
 
+  // per balloon popped, or per frame merging several pops
+  @CompileStatic
+  void handleScore(Player player, int score, int consecutive, boolean goldenSnitchPopped, int pops) {
+    sendScore(player, score, consecutive, goldenSnitchPopped)
+
+    popAccumulator?.pop(player.team.number, pops)
+  }
+
   // send score to score server, if there are any achievements returned then send them to achievement server plus client
+  @CompileStatic
   def sendScore(Player player, int score, int consecutivePops, boolean goldenSnitchPopped) {
-    // println(" sendScore ")
-    def currentAggregatedScore = player.aggregatedScore.get();
-    if (currentAggregatedScore == null) {
-      println(" currentAggregatedScore == null ")
-      // If the new aggregate is null then a request is in progress
-      def aggregatedScore = new AggregatedScore(score, consecutivePops, goldenSnitchPopped)
-      if (!player.aggregatedScore.compareAndSet(currentAggregatedScore, aggregatedScore)) {
-        // The state has changed so retry
-        sendScore(player, score, consecutivePops, goldenSnitchPopped)
-      }
-    } else {
-      // println(" else ")
-      def aggregatedScore = new AggregatedScore(
-              score > currentAggregatedScore.score ? score : currentAggregatedScore.score,
-              consecutivePops > currentAggregatedScore.consecutivePops ? consecutivePops : currentAggregatedScore.consecutivePops,
-              goldenSnitchPopped ? true : currentAggregatedScore.goldenSnitchPopped
-      )
-      if (!player.aggregatedScore.compareAndSet(currentAggregatedScore, aggregatedScore)) {
-        // The state has changed so retry
-        sendScore(player, score, consecutivePops, goldenSnitchPopped)
-      } else if (currentAggregatedScore.isDefaulted()) {
-        // If the previous aggregate has default scores then the previous request has finished so we restart
-        // println("processSend")
-        processSend(player)
-      }
+    if (scoreBatchWindow > 0) {
+      batchScore(player, score, consecutivePops, goldenSnitchPopped)
+      return
+    }
+    // Aggregated without allocation while a request is in flight
+    if (player.offerScore(score, consecutivePops, goldenSnitchPopped)) {
+      // No request in flight, the score is sent right away
+      processSend(player)
     }
   }
 
   def processSend(Player player) {
-    def aggregatedScore = player.aggregatedScore.getAndSet(null)
+    long aggregatedScore = player.takeScore()
 
     retryableProcessSend(0, player, aggregatedScore, Future.future())
   }
 
-  def retryProcessSend(int attempt, Player player, AggregatedScore aggregatedScore, Future future) {
+  def retryProcessSend(int attempt, Player player, long aggregatedScore, Future future) {
     int newAttempt = attempt + 1;
     if (newAttempt > 10) {
       println("Number of attempts reached " + attempt + ", cancelling")
+      GameMetrics.SCORE_RETRIES_EXHAUSTED.inc()
       future.complete()
     } else {
+      GameMetrics.SCORE_RETRIES.inc()
       vertx.setTimer(1000, { x -> retryableProcessSend(newAttempt, player, aggregatedScore, future) })
     }
   }
 
-  def retryableProcessSend(int attempt, Player player, aggregatedScore, Future future) {
+  def retryableProcessSend(int attempt, Player player, long aggregatedScore, Future future) {
     def String uuid = player.userId
     def String username = player.username
     def int team = player.team.number
 
-    def playerUpdate = '{' +
-            '  "lookup"   : "ScoreSession",' +
-            '  "commands" : [' +
-            '  { "insert" : {' +
-            '      "object" : {"com.redhatkeynote.score.Player":{' +
-            '         "uuid"     : "' + uuid + '",' +
-            '         "username" : "' + username + '",' +
-            '         "team"     : ' + team + ',' +
-            '         "score"    : ' + aggregatedScore.score + ',' +
-            '         "consecutivePops"     : ' + aggregatedScore.consecutivePops + "," +
-            '         "goldenSnitch"     : ' + aggregatedScore.goldenSnitchPopped +
-            '      }}' +
-            '    }' +
-            '  },' +
-            '  { "insert" : {' +
-            '      "object" : {"com.redhatkeynote.score.AchievementList":{' +
-            '      }},' +
-            '      "out-identifier" : "newAchievements",' +
-            '      "return-object" : true' +
-            '    }' +
-            '  },' +
-            '  {' +
-            '    "fire-all-rules" : {}' +
-            '  } ]' +
-            '}'
+    def playerUpdate = new Buffer(KieCommandWriter.playerUpdate(uuid, username, team, PlayerScore.score(aggregatedScore),
+            PlayerScore.consecutive(aggregatedScore), PlayerScore.goldenSnitchPopped(aggregatedScore)))
 
     future.setHandler({ ar ->
       // We have finished the request.  If we cannot set the new default then a score has come in,
       // we process again
-      def empty = player.aggregatedScore.compareAndSet(null, new AggregatedScore())
-      if (!empty) {
+      if (!player.completeScore()) {
         processSend(player)
       }
     })
@@ -487,6 +565,7 @@ class GameVerticle extends GroovyVerticle {
     println("scorePort: " + scorePort)
     println("scorePath: " + scorePath)
     */
+    long start = System.nanoTime()
     def clientRequest = scoreClient.post(scorePort, scoreHost, scorePath, { resp ->
       resp.exceptionHandler({ t ->
         t.printStackTrace();
@@ -495,24 +574,21 @@ class GameVerticle extends GroovyVerticle {
       if (resp.statusCode() == 200) {
         // println("200")
         resp.bodyHandler { body ->
-          def bodyContents = body.toString()
-          Map response = Json.decodeValue(bodyContents, Map.class);
-          if (response?.type == "SUCCESS") {
-            def results = response?.result?.get('execution-results')?.results
-            if (results) {
-              for (result in results) {
-                if (result.key == "newAchievements") {
-                  def achievements = result.value.get('com.redhatkeynote.score.AchievementList')?.achievements
-                  updateAchievements(player, achievements)
-                  send(player, [
-                          type        : 'achievements',
-                          achievements: achievements
-                  ])
-                }
-              }
+          GameMetrics.stop(GameMetrics.SCORE_REQUEST, start)
+          // Only the achievement list is decoded
+          def results = KieResponseParser.extractResults(body.getDelegate(), "newAchievements")
+          if (results != null) {
+            def newAchievements = results.get("newAchievements")
+            if (newAchievements != null) {
+              def achievements = newAchievements.getJsonArray("achievements")?.getList()
+              updateAchievements(player, achievements)
+              send(player, [
+                      type        : 'achievements',
+                      achievements: achievements
+              ])
             }
           } else {
-            println("Unsuccessful, received the following body from the score server: " + bodyContents)
+            println("Unsuccessful, received the following body from the score server: " + body.toString())
           }
           future.complete()
         }
@@ -536,28 +612,163 @@ class GameVerticle extends GroovyVerticle {
     clientRequest.end(playerUpdate)
   }
 
+  // aggregate the score with the other dirty players of this verticle, the batch is sent when the window expires or
+  // when the batch is full
+  @CompileStatic
+  def batchScore(Player player, int score, int consecutivePops, boolean goldenSnitchPopped) {
+    // Aggregated in the player, it only joins the batch when no request is in flight for it
+    if (player.offerScore(score, consecutivePops, goldenSnitchPopped)) {
+      pendingPlayers.add(player)
+      scheduleScoreBatch()
+    }
+  }
+
+  def scheduleScoreBatch() {
+    if (batchInFlight || pendingPlayers.isEmpty()) {
+      // Will be rescheduled once the current batch completes
+      return
+    }
+    if (pendingPlayers.size() >= scoreBatchSize) {
+      flushScoreBatch()
+    } else if (batchTimer == -1) {
+      batchTimer = vertx.setTimer(scoreBatchWindow, { l ->
+        batchTimer = -1
+        flushScoreBatch()
+      })
+    }
+  }
+
+  def flushScoreBatch() {
+    if (batchTimer != -1) {
+      vertx.cancelTimer(batchTimer)
+      batchTimer = -1
+    }
+    if (batchInFlight || pendingPlayers.isEmpty()) {
+      return
+    }
+    List<Player> players = []
+    long[] scores = new long[Math.min(pendingPlayers.size(), scoreBatchSize)]
+    def iterator = pendingPlayers.iterator()
+    while (players.size() < scores.length) {
+      def player = iterator.next()
+      scores[players.size()] = player.takeScore()
+      players.add(player)
+      iterator.remove()
+    }
+
+    batchInFlight = true
+    Future future = Future.future()
+    future.setHandler({ ar ->
+      batchInFlight = false
+      if (ar.failed()) {
+        // Sent one by one, the score server did not return an achievement list per player
+        disableScoreBatch(players, scores, ar.cause())
+        return
+      }
+      players.each { player ->
+        // A score came in meanwhile, sent with the next batch unless the player is gone
+        if (!player.completeScore() && player.team.players.get(player.userId).is(player)) {
+          pendingPlayers.add(player)
+        }
+      }
+      scheduleScoreBatch()
+    })
+    retryableProcessBatch(0, players, scores, future)
+  }
+
+  // the score rules do not fill the achievement list of each player, the scores are sent one request per player from
+  // now on, the batch in flight included
+  def disableScoreBatch(List<Player> players, long[] scores, Throwable cause) {
+    println("The score server did not return an achievement list per player, score batching disabled: "
+            + cause.getMessage())
+    scoreBatchWindow = 0
+    for (int i = 0; i < players.size(); i++) {
+      retryableProcessSend(0, players[i], scores[i], Future.future())
+    }
+    List<Player> pending = new ArrayList<>(pendingPlayers)
+    pendingPlayers.clear()
+    pending.each { player -> processSend(player) }
+  }
+
+  def retryProcessBatch(int attempt, List<Player> players, long[] scores, Future future) {
+    int newAttempt = attempt + 1;
+    if (newAttempt > 10) {
+      println("Number of attempts reached " + attempt + " for a batch of " + players.size() + " players, cancelling")
+      GameMetrics.SCORE_RETRIES_EXHAUSTED.inc()
+      future.complete()
+    } else {
+      GameMetrics.SCORE_RETRIES.inc()
+      vertx.setTimer(1000, { x -> retryableProcessBatch(newAttempt, players, scores, future) })
+    }
+  }
+
+  // a single request inserting all the players of the batch, each player gets its own achievement list identified
+  // by its index in the batch. The rules must fill the list whose uuid matches the player, the future fails when the
+  // response does not hold a list per player.
+  def retryableProcessBatch(int attempt, List<Player> players, long[] scores, Future future) {
+    def writer = KieCommandWriter.scoreSession(players.size())
+    for (int i = 0; i < players.size(); i++) {
+      def player = players[i]
+      long aggregatedScore = scores[i]
+      writer.player(player.userId, player.username, player.team.number, PlayerScore.score(aggregatedScore),
+              PlayerScore.consecutive(aggregatedScore), PlayerScore.goldenSnitchPopped(aggregatedScore))
+      writer.achievementList(player.userId, "newAchievements-", i)
+    }
+    def batchUpdate = new Buffer(writer.end())
+
+    long start = System.nanoTime()
+    def clientRequest = scoreClient.post(scorePort, scoreHost, scorePath, { resp ->
+      resp.exceptionHandler({ t ->
+        t.printStackTrace();
+        retryProcessBatch(attempt, players, scores, future)
+      });
+      if (resp.statusCode() == 200) {
+        resp.bodyHandler { body ->
+          GameMetrics.stop(GameMetrics.SCORE_REQUEST, start)
+          // Only the achievement lists are decoded
+          def results = KieResponseParser.extractResults(body.getDelegate(), "newAchievements-")
+          if (results == null) {
+            println("Unsuccessful, received the following body from the score server: " + body.toString())
+          } else if (results.size() != players.size()) {
+            future.fail("Received " + results.size() + " achievement lists for " + players.size() + " players")
+            return
+          } else {
+            results.each { key, newAchievements ->
+              def player = players[key.substring("newAchievements-".length()).toInteger()]
+              def achievements = newAchievements.getJsonArray("achievements")?.getList()
+              updateAchievements(player, achievements)
+              send(player, [
+                      type        : 'achievements',
+                      achievements: achievements
+              ])
+            }
+          }
+          future.complete()
+        }
+      } else {
+        println("Received error response from Score endpoint: " + resp.statusMessage());
+        retryProcessBatch(attempt, players, scores, future)
+      }
+    })
+            .putHeader('Accept', 'application/json')
+            .putHeader('Content-Type', 'application/json')
+            .setTimeout(10000)
+            .exceptionHandler({ t ->
+      t.printStackTrace()
+      retryProcessBatch(attempt, players, scores, future)
+    })
+
+    if (scoreAuthHeader) {
+      clientRequest.putHeader("Authorization", scoreAuthHeader)
+    }
+
+    clientRequest.end(batchUpdate)
+  }
+
   // delete scores on score server
   def deleteScores() {
     Future future = Future.future()
-    def deleteScores = '{' +
-            '  "lookup"   : "ScoreSession",' +
-            '  "commands" : [' +
-            '  { "insert" : {' +
-            '      "object" : {"com.redhatkeynote.score.DeletePlayers":{' +
-            '      }}' +
-            '    }' +
-            '  },' +
-            '  { "insert" : {' +
-            '      "object" : {"com.redhatkeynote.score.AchievementList":{' +
-            '      }},' +
-            '      "out-identifier" : "newAchievements",' +
-            '      "return-object" : true' +
-            '    }' +
-            '  },' +
-            '  {' +
-            '    "fire-all-rules" : {}' +
-            '  } ]' +
-            '}'
+    def deleteScores = new Buffer(KieCommandWriter.deleteScores())
 
     def clientRequest = scoreClient.post(scorePort, scoreHost, scorePath, { resp ->
       resp.exceptionHandler({ t ->
@@ -589,6 +800,29 @@ class GameVerticle extends GroovyVerticle {
     vertx.eventBus().send(user.userId, message)
   }
 
+  @CompileStatic
+  def send(Player player, Map message) {
+    // Co-located players are reached without the event bus, no consumer is registered for them
+    if (player.session) {
+      player.session.sendToSocket(message)
+    } else {
+      vertx.eventBus().send(player.userId, message)
+    }
+  }
+
+  def send(user, Broadcast broadcast) {
+    vertx.eventBus().send(user.userId, broadcast)
+  }
+
+  @CompileStatic
+  def send(Player player, Broadcast broadcast) {
+    if (player.session != null) {
+      player.session.sendToSocket(broadcast)
+    } else {
+      vertx.eventBus().send(player.userId, broadcast)
+    }
+  }
+
   def send(user, List message) {
     vertx.eventBus().send(user.userId, message)
   }
@@ -605,28 +839,20 @@ class GameVerticle extends GroovyVerticle {
   private Handler<Message<List>> updateTeamScores() {
     { m ->
       List scores = m.body();
-      def changed = false
+      // Kept for the configuration sent to new players, the team-score messages are published on the team topics
+      // by the score timer
       scores.each { score ->
-        def team = teams.get(score.team)
-        if (team.score != score.score) {
-          team.score = score.score
-          changed = true
-        }
-      }
-
-// BURR - need to review
-      if (changed || (state == 'play')) {
-        broadcastTeamScores()
+        teams.get(score.team).score = score.score
       }
     }
   }
 
   def updateAchievements(Player player, List achievements) {
-    def currentAggregatedAchievements = player.aggregatedAchievements.get();
+    def currentAggregatedAchievements = player.getAchievements();
     if (currentAggregatedAchievements == null) {
       // If the new aggregate is null then a request is in progress
       def aggregatedAchievements = new AggregatedAchievements(achievements)
-      if (!player.aggregatedAchievements.compareAndSet(currentAggregatedAchievements, aggregatedAchievements)) {
+      if (!player.compareAndSetAchievements(currentAggregatedAchievements, aggregatedAchievements)) {
         // The state has changed so retry
         updateAchievements(player, achievements)
       }
@@ -635,7 +861,7 @@ class GameVerticle extends GroovyVerticle {
       newAchievements.addAll(achievements)
       newAchievements.addAll(currentAggregatedAchievements.achievements)
       def aggregatedAchievements = new AggregatedAchievements(newAchievements)
-      if (!player.aggregatedAchievements.compareAndSet(currentAggregatedAchievements, aggregatedAchievements)) {
+      if (!player.compareAndSetAchievements(currentAggregatedAchievements, aggregatedAchievements)) {
         // The state has changed so retry
         updateAchievements(player, achievements)
       } else if (currentAggregatedAchievements.isDefaulted()) {
@@ -649,14 +875,13 @@ class GameVerticle extends GroovyVerticle {
     def future = Future.future()
     future.setHandler({ ar ->
       // We have finished the request.  If we cannot set the new default then a score has come in, we process again
-      def empty = player.aggregatedAchievements.compareAndSet(null, new AggregatedAchievements())
-      if (!empty) {
+      if (!player.completeAchievements()) {
         processUpdateAchievements(player)
       }
     })
 
     def String uuid = player.userId
-    def aggregatedAchievements = player.aggregatedAchievements.getAndSet(null)
+    def aggregatedAchievements = player.takeAchievements()
     def achievements = aggregatedAchievements.achievements
     if (achievements && achievements.size() > 0) {
 
@@ -667,7 +892,11 @@ class GameVerticle extends GroovyVerticle {
       LOGGER.finest("port: " + achievementPort)
       LOGGER.finest("path: " + path)
 
+      long start = System.nanoTime()
       achievementClient.put(achievementPort, achievementHost, path, { resp ->
+        GameMetrics.stop(GameMetrics.ACHIEVEMENT_PUT, start)
+        // The leaderboard fetches the achievements of this player again
+        vertx.eventBus().publish(AchievementCache.INVALIDATION_ADDRESS, uuid)
         // We don't read the body, no need for exception handler here.
         if (resp.statusCode() != 200) {  
           LOGGER.info("GameVerticle.groovy:processUpdateAchievements Received  response from Achievement endpoint: " + resp.statusMessage());
@@ -691,6 +920,7 @@ class GameVerticle extends GroovyVerticle {
     Future future = Future.future()
     achievementClient.delete(achievementPort, achievementHost, path, { resp ->
       // We don't read the body, no need for exception handler here.
+      vertx.eventBus().publish(AchievementCache.INVALIDATION_ADDRESS, null)
       future.complete()
       if (resp.statusCode() != 204) {
         LOGGER.info("GameVerticle.groovy:resetAchievements Response from Achievement endpoint: " + resp.statusMessage());
@@ -703,20 +933,6 @@ class GameVerticle extends GroovyVerticle {
     return future
   }
 
-  def broadcastTeamScores() {
-    // System.out.println("TEAM BROADCAST");
-    teams.each { i, team ->
-      def message = [
-              type : 'team-score',
-              score: team.score
-      ]
-
-      team.players.each { player ->
-        send(player, message);
-      }
-    }
-  }
-
   def setConfiguration(Map configuration) {
     teams.each { i, team ->
       team.configuration = configuration;
@@ -727,15 +943,36 @@ class GameVerticle extends GroovyVerticle {
     broadcastConfigurationChange();
   }
 
-  def broadcastConfigurationChange() {
-    teams.each { i, team ->
-      def configurationMessage = [
+  /**
+   * Sets the configuration of every game verticle. The players receive it on the global topic, unless only a part of
+   * them must receive it (traffic percentage), each game verticle then sends it to its own players.
+   */
+  def publishConfiguration(Map configuration) {
+    publish("configuration", configuration)
+    if (!isSampled(configuration)) {
+      publishToAll([
               type         : 'configuration',
-              configuration:
-                      team.configuration
-      ]
+              configuration: configuration
+      ])
+    }
+  }
 
-      broadcastTeamMessage(team, configurationMessage);
+  static boolean isSampled(Map configuration) {
+    def trafficPercentage = configuration?.trafficPercentage
+    return trafficPercentage && trafficPercentage != 100
+  }
+
+  def broadcastConfigurationChange() {
+    if (isSampled(adminConfiguration)) {
+      teams.each { i, team ->
+        def configurationMessage = [
+                type         : 'configuration',
+                configuration:
+                        team.configuration
+        ]
+
+        broadcastTeamMessage(team, configurationMessage);
+      }
     }
     def configurationMessage = [
             type         : 'configuration',
@@ -751,6 +988,7 @@ class GameVerticle extends GroovyVerticle {
     }
   }
 
+  // The players receive the state on the global topic, see publishState
   def setState(_state) {
     state = _state;
 
@@ -759,7 +997,6 @@ class GameVerticle extends GroovyVerticle {
             state: state
     ];
 
-    broadcastAllMessage(message);
     broadcastAdminMessage(message);
   }
 
@@ -778,41 +1015,54 @@ class GameVerticle extends GroovyVerticle {
             state: selfieState
     ];
 
-    broadcastAllMessage(message);
     broadcastAdminMessage(message);
   }
 
-
-  def broadcastAllMessage(Map message) {
-    teams.each({ i, team -> broadcastTeamMessage(team, message) })
+  /**
+   * Sets the state of every game verticle and sends it to all the players with a single publish.
+   *
+   * @param address the state change address
+   * @param type the type of the message sent to the players
+   * @param data the state change
+   */
+  def publishState(String address, String type, Map data) {
+    publish(address, data)
+    publishToAll([
+            type : type,
+            state: data.state
+    ])
   }
 
-  def broadcastTeamMessage(Team team, Map message) {
-    def trafficPercentage = message.configuration?.trafficPercentage
-    if (message.type == "configuration" && trafficPercentage && trafficPercentage != 100) {
-
-      if (team.players.size() > 0) {
-        long seed = System.nanoTime();
-        Collections.shuffle(team.players, new Random(seed));
 
-        def numPlayers = (int) Math.ceil(team.players.size() * (trafficPercentage / 100)) - 1;
-        def playersSubset = [];
-        team.players[0..numPlayers].each { playersSubset << it }
+  // Sent to the players of every team by the server verticles
+  def publishToAll(Map message) {
+    vertx.eventBus().publish(Broadcast.ALL_ADDRESS, Broadcast.of(message))
+  }
 
-        playersSubset.each { player ->
-          send(player, message);
+  @CompileStatic
+  def broadcastTeamMessage(Team team, Map message) {
+    Map configuration = (Map) message.get('configuration')
+    Number trafficPercentage = (Number) configuration?.get('trafficPercentage')
+    def broadcast = Broadcast.of(message)
+    if (message.get('type') == "configuration" && trafficPercentage && trafficPercentage != 100) {
+      // Hash based selection, the list of players is not modified
+      double percentage = trafficPercentage.doubleValue()
+      for (Player player : team.players) {
+        if (TrafficSampler.isSampled(player.userId, percentage)) {
+          send(player, broadcast);
         }
       }
     } else {
-      team.players.each { player ->
-        send(player, message)
+      for (Player player : team.players) {
+        send(player, broadcast)
       }
     }
   }
 
   def broadcastAdminMessage(Map message) {
+    def broadcast = Broadcast.of(message)
     admins.each { admin ->
-      send(admin, message)
+      send(admin, broadcast)
     }
   }
 
@@ -822,11 +1072,17 @@ class GameVerticle extends GroovyVerticle {
     return [endpoint.host, endpoint.port, endpoint.path]
   }
 
-  def getTeamCounter() {
+  static def retrieveServiceEndpoint(String env, String path, int testPort, String testPath) {
+    def endpoint = GameUtils.retrieveServiceEndpoint(env, path, testPort, testPath);
+
+    return [endpoint.host, endpoint.port, endpoint.path]
+  }
+
+  def retrieveNameBlockCounter() {
     def future = Future.future()
 
-    vertx.sharedData().getCounter(TEAM_COUNTER_NAME, { ar ->
-      counter = ar.result()
+    vertx.sharedData().getCounter(NameService.BLOCK_COUNTER_NAME, { ar ->
+      nameBlockCounter = ar.result()
       if (ar.succeeded()) {
         future.complete()
       } else {
@@ -855,24 +1111,18 @@ class GameVerticle extends GroovyVerticle {
     return futures
   }
 
-  def getIndividualTeamPopCounters() {
-    def futures = []
-    for (team in teams.keySet()) {
-      def future = Future.future()
-      futures.add(future)
-      def name = TEAM_POP_COUNTER_NAME + "." + team;
-      def teamNumber = team;
-      vertx.sharedData().getCounter(name, { ar ->
+  def retrievePopEpochCounter() {
+    def future = Future.future()
 
-        teamPopCounters[teamNumber] = ar.result()
-        if (ar.succeeded()) {
-          future.complete()
-        } else {
-          future.fail(ar.cause())
-        }
-      })
-    }
-    return futures
+    vertx.sharedData().getCounter(PopAccumulator.EPOCH_COUNTER_NAME, { ar ->
+      popEpochCounter = ar.result()
+      if (ar.succeeded()) {
+        future.complete()
+      } else {
+        future.fail(ar.cause())
+      }
+    })
+    return future
   }
 
   def getPlayerNameMap() {
@@ -893,16 +1143,26 @@ class GameVerticle extends GroovyVerticle {
     def futures = []
     futures.add(deleteScores())
     futures.add(resetAchievements())
-    teamPopCounters.each { k, v ->
-      Future future = Future.future()
-      futures.add(future)
-      def currentCounter = v
-      currentCounter.get({ nar ->
-        currentCounter.addAndGet(-1 * nar.result(), { inner ->
-          future.complete()
-        });
-      });
-    }
+    // The pop counters restart from 0 in a new epoch, the pops not flushed yet are discarded by every node
+    Future popReset = Future.future()
+    futures.add(popReset)
+    popAccumulator.reset({ ar ->
+      if (ar.succeeded()) {
+        popReset.complete()
+      } else {
+        popReset.fail(ar.cause())
+      }
+    } as Handler)
+    // The name sequence restarts, the names of the players still connected may be handed out again
+    Future namesReset = Future.future()
+    futures.add(namesReset)
+    nameService.reset({ ar ->
+      if (ar.succeeded()) {
+        namesReset.complete()
+      } else {
+        namesReset.fail(ar.cause())
+      }
+    } as Handler)
     Future composite = Future.future()
     CompositeFuture.all(futures).setHandler({ ar ->
       if (ar.succeeded()) {
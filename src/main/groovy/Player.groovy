@@ -1,22 +1,45 @@
-import com.redhat.middleware.keynote.UserNameGenerator
-import java.util.concurrent.atomic.AtomicReference
+import com.redhat.middleware.keynote.LocalSession
+import com.redhat.middleware.keynote.PlayerScore
+import groovy.transform.CompileStatic
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater
 
+// The aggregated score is inherited from PlayerScore, packed in a long. Statically compiled, the field updater
+// checks the class calling it.
+@CompileStatic
+class Player extends PlayerScore {
+  private static final AtomicReferenceFieldUpdater<Player, AggregatedAchievements> ACHIEVEMENTS =
+          AtomicReferenceFieldUpdater.newUpdater(Player, AggregatedAchievements, "aggregatedAchievements")
+  // Never modified, shared by the players without pending achievements
+  private static final AggregatedAchievements NO_ACHIEVEMENTS = new AggregatedAchievements()
 
-class Player {
-  def userId
-  def team
-  def username
-  AtomicReference aggregatedScore = new AtomicReference(new AggregatedScore());
-  AtomicReference aggregatedAchievements = new AtomicReference(new AggregatedAchievements());
+  final String userId
+  final Team team
+  final String username
+  // Set when the player socket is managed in this JVM
+  LocalSession session
+  // null while an achievement update is in flight
+  private volatile AggregatedAchievements aggregatedAchievements = NO_ACHIEVEMENTS
 
-  Player(userId, team, username) {
+  Player(String userId, Team team, String username) {
     this.userId = userId
     this.team = team
     this.username = username
   }
 
-  Player(team) {
-    this(UUID.randomUUID().toString(), team, UserNameGenerator.generate())
+  AggregatedAchievements getAchievements() {
+    return aggregatedAchievements
+  }
+
+  boolean compareAndSetAchievements(AggregatedAchievements expected, AggregatedAchievements achievements) {
+    return ACHIEVEMENTS.compareAndSet(this, expected, achievements)
+  }
+
+  AggregatedAchievements takeAchievements() {
+    return ACHIEVEMENTS.getAndSet(this, null)
+  }
+
+  boolean completeAchievements() {
+    return ACHIEVEMENTS.compareAndSet(this, null, NO_ACHIEVEMENTS)
   }
 
   Map toMap() {
@@ -1,11 +1,15 @@
+import com.redhat.middleware.keynote.PlayerRegistry
+import groovy.transform.CompileStatic
+
+@CompileStatic
 class Team {
 
-  def number
-  def score = 0
-  List<Player> players = []
-  def configuration = [:]
+  final int number
+  int score = 0
+  PlayerRegistry<Player> players = new PlayerRegistry<>()
+  Map configuration = [:]
 
-  Team(number) {
+  Team(int number) {
     this.number = number
   }
 
@@ -13,14 +17,14 @@ class Team {
     return [
             'number'       : number,
             'score'        : score,
-            'players'      : players,
+            'players'      : players.toList(),
             'configuration': configuration
     ]
   }
 
-  static def createTeams(int numTeams) {
-    def teams = [:]
-    for (def i = 1; i < numTeams + 1; i++) {
+  static Map<Integer, Team> createTeams(int numTeams) {
+    Map<Integer, Team> teams = [:]
+    for (int i = 1; i < numTeams + 1; i++) {
       def team = new Team(i);
       teams.put(i, team);
     }
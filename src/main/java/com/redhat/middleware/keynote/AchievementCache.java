@@ -0,0 +1,91 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Achievements of the top players, indexed by player uuid. Not thread safe, used from the score timer context.
+ * <p>
+ * The game verticles publish the uuid of a player on {@link #INVALIDATION_ADDRESS} once they have updated its
+ * achievements ({@code null} once all the achievements have been reset). A fetch started before an invalidation of
+ * the same player is not cached.
+ */
+public class AchievementCache {
+
+  public static final String INVALIDATION_ADDRESS = "achievements-updated";
+
+  // Either the achievements or the token of the fetch in progress
+  private final Map<String, Object> entries = new HashMap<>();
+
+  /**
+   * @return the cached achievements, {@code null} if they need to be fetched
+   */
+  public JsonObject get(String uuid) {
+    Object entry = entries.get(uuid);
+    return entry instanceof JsonObject ? (JsonObject) entry : null;
+  }
+
+  /**
+   * @return whether the achievements of the player are being fetched, the player must not be fetched again until
+   * the fetch is completed or aborted
+   */
+  public boolean isFetching(String uuid) {
+    Object entry = entries.get(uuid);
+    return entry != null && !(entry instanceof JsonObject);
+  }
+
+  /**
+   * Marks the achievements of a player as being fetched.
+   *
+   * @return the token to pass to {@link #complete(String, Object, JsonObject)}
+   */
+  public Object fetch(String uuid) {
+    Object token = new Object();
+    entries.put(uuid, token);
+    return token;
+  }
+
+  /**
+   * Caches the fetched achievements, unless they have been invalidated in the meantime.
+   */
+  public void complete(String uuid, Object token, JsonObject achievements) {
+    if (entries.get(uuid) == token) {
+      entries.put(uuid, achievements);
+    }
+  }
+
+  /**
+   * Ends a fetch without achievements, failed or not answered for this player. Does nothing if the fetch has been
+   * completed or invalidated.
+   */
+  public void abort(String uuid, Object token) {
+    if (entries.get(uuid) == token) {
+      entries.remove(uuid);
+    }
+  }
+
+  /**
+   * @param uuid the player uuid, {@code null} to invalidate all the players
+   */
+  public void invalidate(String uuid) {
+    if (uuid == null) {
+      entries.clear();
+    } else {
+      entries.remove(uuid);
+    }
+  }
+
+  /**
+   * Evicts the players not in the given collection, typically the players no longer in the top players.
+   */
+  public void retain(Collection<String> uuids) {
+    entries.keySet().retainAll(uuids);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+}
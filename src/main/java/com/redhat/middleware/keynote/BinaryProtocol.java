@@ -0,0 +1,336 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Compact binary protocol used by the clients negotiating the {@link #SUB_PROTOCOL} web socket sub-protocol.
+ * <p>
+ * Every frame starts with a type byte. Integers are big endian, strings are prefixed by their length in bytes
+ * (2 bytes, unsigned) and encoded in UTF-8, ids are written as 2 longs (16 bytes, all zeros when absent). Messages
+ * without a fixed layout are sent as a {@link #TYPE_JSON} frame carrying the JSON text.
+ * <p>
+ * Client to server:
+ * <ul>
+ * <li>{@link #TYPE_REGISTER}: team (byte, 0 if none), id</li>
+ * <li>{@link #TYPE_SCORE}: score (int), consecutive (int), golden snitch popped (byte)</li>
+ * </ul>
+ * Server to client:
+ * <ul>
+ * <li>{@link #TYPE_ID}: id</li>
+ * <li>{@link #TYPE_TEAM_SCORE}: score (int)</li>
+ * <li>{@link #TYPE_STATE} and {@link #TYPE_SELFIE_STATE}: state code (byte), followed by the state string if the
+ * code is {@link #STATE_OTHER}</li>
+ * <li>{@link #TYPE_CONFIGURATION}: presence (short), then the fields present in the message in this order: team
+ * (byte), score (int), player id, username, opacity (short), scale (float), speed (short), background, points
+ * (nothing written, present if the points object is), points for red, blue, green, yellow and golden snitch (int
+ * each), golden snitch (byte), traffic percentage (byte). Bit {@code n} of the presence (from the least significant
+ * one) is set when the {@code n}th field is present, the absent fields are not written. A configuration message with other fields, or values not fitting the layout, is sent as
+ * {@link #TYPE_JSON}.</li>
+ * </ul>
+ */
+public class BinaryProtocol {
+
+  public static final String SUB_PROTOCOL = "game-binary-v1";
+
+  public static final byte TYPE_JSON = 0;
+  public static final byte TYPE_REGISTER = 1;
+  public static final byte TYPE_SCORE = 2;
+  public static final byte TYPE_ID = 3;
+  public static final byte TYPE_TEAM_SCORE = 4;
+  public static final byte TYPE_STATE = 5;
+  public static final byte TYPE_SELFIE_STATE = 6;
+  public static final byte TYPE_CONFIGURATION = 7;
+
+  public static final byte STATE_OTHER = 0;
+
+  /**
+   * Known states, the code is the index in this array.
+   */
+  private static final String[] STATES = {
+      null, "title", "demo", "play", "pause", "game-over", "start-game", "open", "closed"
+  };
+
+  /**
+   * Keys of the configuration messages sent as {@link #TYPE_CONFIGURATION} frames.
+   */
+  private static final String[] MESSAGE_KEYS = {"type", "team", "score", "playerId", "username", "configuration"};
+  private static final String[] CONFIGURATION_KEYS = {
+      "opacity", "scale", "speed", "background", "points", "goldenSnitch", "trafficPercentage"
+  };
+  private static final String[] POINTS_KEYS = {"red", "blue", "green", "yellow", "goldenSnitch"};
+
+  private static final int SCORE_FRAME_LENGTH = 10;
+  private static final int REGISTER_FRAME_LENGTH = 18;
+
+  public static boolean isScore(Buffer frame) {
+    return frame.length() == SCORE_FRAME_LENGTH && frame.getByte(0) == TYPE_SCORE;
+  }
+
+  public static int score(Buffer frame) {
+    return frame.getInt(1);
+  }
+
+  public static int consecutive(Buffer frame) {
+    return frame.getInt(5);
+  }
+
+  public static boolean goldenSnitchPopped(Buffer frame) {
+    return frame.getByte(9) != 0;
+  }
+
+  public static Buffer encodeScore(int score, int consecutive, boolean goldenSnitchPopped) {
+    return Buffer.buffer(SCORE_FRAME_LENGTH)
+        .appendByte(TYPE_SCORE)
+        .appendInt(score)
+        .appendInt(consecutive)
+        .appendByte(goldenSnitchPopped ? (byte) 1 : 0);
+  }
+
+  public static Buffer encodeRegister(String id, int team) {
+    Buffer buffer = Buffer.buffer(REGISTER_FRAME_LENGTH)
+        .appendByte(TYPE_REGISTER)
+        .appendByte((byte) team);
+    if (!appendId(buffer, id)) {
+      appendId(buffer, null);
+    }
+    return buffer;
+  }
+
+  /**
+   * Decodes a client frame other than a score frame into the JSON message the game verticle expects.
+   *
+   * @param frame the frame
+   * @return the message
+   */
+  public static JsonObject decode(Buffer frame) {
+    if (frame.length() == 0) {
+      return new JsonObject();
+    }
+    if (isScore(frame)) {
+      return new JsonObject()
+          .put("type", "score")
+          .put("score", score(frame))
+          .put("consecutive", consecutive(frame))
+          .put("goldenSnitchPopped", goldenSnitchPopped(frame));
+    }
+    switch (frame.getByte(0)) {
+      case TYPE_REGISTER:
+        JsonObject json = new JsonObject();
+        int team = frame.getByte(1);
+        if (team > 0) {
+          json.put("team", team);
+        }
+        String id = readId(frame, 2);
+        if (id != null) {
+          json.put("id", id);
+        }
+        return json;
+      default:
+        return new JsonObject(frame.getString(1, frame.length(), "UTF-8"));
+    }
+  }
+
+  /**
+   * Encodes a message sent to a client.
+   *
+   * @param message the message, as sent by the game verticle
+   * @return the frame content
+   */
+  public static Buffer encode(JsonObject message) {
+    String type = message.getString("type");
+    if (type != null) {
+      switch (type) {
+        case "id":
+          Buffer id = Buffer.buffer(17).appendByte(TYPE_ID);
+          if (appendId(id, message.getString("id"))) {
+            return id;
+          }
+          break;
+        case "team-score":
+          return Buffer.buffer(5).appendByte(TYPE_TEAM_SCORE).appendInt(intValue(message, "score"));
+        case "state":
+          return encodeState(TYPE_STATE, message.getString("state"));
+        case "selfie-state":
+          return encodeState(TYPE_SELFIE_STATE, message.getString("state"));
+        case "configuration":
+          Buffer configuration = encodeConfiguration(message);
+          if (configuration != null) {
+            return configuration;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return Buffer.buffer().appendByte(TYPE_JSON).appendString(message.encode());
+  }
+
+  private static Buffer encodeState(byte type, String state) {
+    for (int code = 1; code < STATES.length; code++) {
+      if (STATES[code].equals(state)) {
+        return Buffer.buffer(2).appendByte(type).appendByte((byte) code);
+      }
+    }
+    Buffer buffer = Buffer.buffer().appendByte(type).appendByte(STATE_OTHER);
+    appendString(buffer, state);
+    return buffer;
+  }
+
+  /**
+   * @return the frame, {@code null} if the message does not fit the layout and must be sent as JSON
+   */
+  private static Buffer encodeConfiguration(JsonObject message) {
+    Buffer buffer = Buffer.buffer(96).appendByte(TYPE_CONFIGURATION).appendShort((short) 0);
+    int presence = 0;
+    try {
+      JsonObject configuration = message.getJsonObject("configuration");
+      if (configuration == null || !hasOnly(message, MESSAGE_KEYS) || !hasOnly(configuration, CONFIGURATION_KEYS)) {
+        return null;
+      }
+      JsonObject points = configuration.containsKey("points") ? present(configuration.getJsonObject("points")) : null;
+      if (points != null && !hasOnly(points, POINTS_KEYS)) {
+        return null;
+      }
+      int field = 0;
+      presence |= appendInt(buffer, message, "team", 1, 1 << field++);
+      presence |= appendInt(buffer, message, "score", 4, 1 << field++);
+      if (message.containsKey("playerId")) {
+        if (!appendId(buffer, present(message.getString("playerId")))) {
+          return null;
+        }
+        presence |= 1 << field;
+      }
+      field++;
+      presence |= appendString(buffer, message, "username", 1 << field++);
+      presence |= appendInt(buffer, configuration, "opacity", 2, 1 << field++);
+      if (configuration.containsKey("scale")) {
+        buffer.appendFloat(present(configuration.getFloat("scale")));
+        presence |= 1 << field;
+      }
+      field++;
+      presence |= appendInt(buffer, configuration, "speed", 2, 1 << field++);
+      presence |= appendString(buffer, configuration, "background", 1 << field++);
+      if (points != null) {
+        presence |= 1 << field;
+      }
+      field++;
+      for (String color : POINTS_KEYS) {
+        presence |= points == null ? 0 : appendInt(buffer, points, color, 4, 1 << field);
+        field++;
+      }
+      if (configuration.containsKey("goldenSnitch")) {
+        buffer.appendByte(present(configuration.getBoolean("goldenSnitch")) ? (byte) 1 : 0);
+        presence |= 1 << field;
+      }
+      field++;
+      presence |= appendInt(buffer, configuration, "trafficPercentage", 1, 1 << field);
+    } catch (ClassCastException | IllegalArgumentException e) {
+      // A value of another type or out of range
+      return null;
+    }
+    return buffer.setShort(1, (short) presence);
+  }
+
+  private static boolean hasOnly(JsonObject json, String[] keys) {
+    return Arrays.asList(keys).containsAll(json.fieldNames());
+  }
+
+  private static <T> T present(T value) {
+    if (value == null) {
+      throw new IllegalArgumentException("null value");
+    }
+    return value;
+  }
+
+  /**
+   * Appends the integer value of the key on the given number of bytes, if present.
+   *
+   * @return the presence bit if the value was appended, 0 otherwise
+   */
+  private static int appendInt(Buffer buffer, JsonObject json, String key, int bytes, int bit) {
+    if (!json.containsKey(key)) {
+      return 0;
+    }
+    int value = present(json.getInteger(key));
+    switch (bytes) {
+      case 1:
+        if (value != (byte) value) {
+          throw new IllegalArgumentException(key);
+        }
+        buffer.appendByte((byte) value);
+        break;
+      case 2:
+        if (value != (short) value) {
+          throw new IllegalArgumentException(key);
+        }
+        buffer.appendShort((short) value);
+        break;
+      default:
+        buffer.appendInt(value);
+        break;
+    }
+    return bit;
+  }
+
+  /**
+   * @return the presence bit if the value was appended, 0 otherwise
+   */
+  private static int appendString(Buffer buffer, JsonObject json, String key, int bit) {
+    if (!json.containsKey(key)) {
+      return 0;
+    }
+    String value = present(json.getString(key));
+    if (value.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+      throw new IllegalArgumentException(key);
+    }
+    appendString(buffer, value);
+    return bit;
+  }
+
+  private static int intValue(JsonObject json, String key) {
+    Integer value = json.getInteger(key);
+    return value == null ? 0 : value;
+  }
+
+  private static void appendString(Buffer buffer, String value) {
+    if (value == null) {
+      buffer.appendShort((short) 0);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      buffer.appendShort((short) bytes.length).appendBytes(bytes);
+    }
+  }
+
+  private static boolean appendId(Buffer buffer, String id) {
+    if (id == null) {
+      buffer.appendLong(0).appendLong(0);
+      return true;
+    }
+    UUID uuid;
+    try {
+      uuid = UUID.fromString(id);
+    } catch (IllegalArgumentException e) {
+      // Not an UUID, use the JSON form instead
+      return false;
+    }
+    buffer.appendLong(uuid.getMostSignificantBits()).appendLong(uuid.getLeastSignificantBits());
+    return true;
+  }
+
+  private static String readId(Buffer frame, int offset) {
+    if (frame.length() < offset + 16) {
+      return null;
+    }
+    long most = frame.getLong(offset);
+    long least = frame.getLong(offset + 8);
+    if (most == 0 && least == 0) {
+      return null;
+    }
+    return new UUID(most, least).toString();
+  }
+}
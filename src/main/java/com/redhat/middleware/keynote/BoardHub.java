@@ -0,0 +1,105 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Fans out the snapshots published on a board address ({@code /scores}, {@code /leaders}) to the board sockets.
+ * <p>
+ * A single event bus consumer serves all the sockets of the verticle, each snapshot is encoded once and the same
+ * buffer is written to every socket. A snapshot equal to the previous one is not sent. Sockets opting in for deltas
+ * first receive {@code {"type":"full","values":[...]}}, then {@code {"type":"delta","size":n,"changes":[...]}} with
+ * only the entries whose position changed (team scores are ordered by team, leaders by rank). Must be used from the
+ * context of the verticle owning the sockets.
+ */
+public class BoardHub {
+
+  private final Set<ServerWebSocket> sockets = new HashSet<>();
+  private final Set<ServerWebSocket> deltaSockets = new HashSet<>();
+  private JsonArray last;
+  private Buffer lastEncoded;
+  private Buffer lastFull;
+
+  public BoardHub(Vertx vertx, String address) {
+    vertx.eventBus().<JsonArray>consumer(address, message -> update(message.body()));
+  }
+
+  /**
+   * Adds a board socket, the current snapshot is sent right away.
+   *
+   * @param socket the socket
+   * @param delta  whether the socket receives deltas instead of full snapshots
+   */
+  public void add(ServerWebSocket socket, boolean delta) {
+    (delta ? deltaSockets : sockets).add(socket);
+    socket.closeHandler(v -> remove(socket));
+    socket.exceptionHandler(t -> remove(socket));
+    if (last != null) {
+      write(socket, delta ? fullMessage() : lastEncoded);
+    }
+  }
+
+  private void remove(ServerWebSocket socket) {
+    sockets.remove(socket);
+    deltaSockets.remove(socket);
+  }
+
+  void update(JsonArray snapshot) {
+    if (snapshot.equals(last)) {
+      return;
+    }
+    JsonArray previous = last;
+    last = snapshot;
+    lastEncoded = Buffer.buffer(snapshot.encode());
+    lastFull = null;
+    writeAll(sockets, lastEncoded);
+    if (!deltaSockets.isEmpty()) {
+      writeAll(deltaSockets, previous == null ? fullMessage() : Buffer.buffer(delta(previous, snapshot).encode()));
+    }
+  }
+
+  private Buffer fullMessage() {
+    if (lastFull == null) {
+      lastFull = Buffer.buffer(new JsonObject().put("type", "full").put("values", last).encode());
+    }
+    return lastFull;
+  }
+
+  /**
+   * @return the delta message turning {@code previous} into {@code current}
+   */
+  static JsonObject delta(JsonArray previous, JsonArray current) {
+    JsonArray changes = new JsonArray();
+    for (int index = 0; index < current.size(); index++) {
+      Object value = current.getValue(index);
+      if (index >= previous.size() || !Objects.equals(value, previous.getValue(index))) {
+        changes.add(new JsonObject().put("index", index).put("value", value));
+      }
+    }
+    return new JsonObject().put("type", "delta").put("size", current.size()).put("changes", changes);
+  }
+
+  private void writeAll(Set<ServerWebSocket> targets, Buffer buffer) {
+    // Copied, a closed socket is removed while iterating
+    for (ServerWebSocket socket : new ArrayList<>(targets)) {
+      write(socket, buffer);
+    }
+  }
+
+  private void write(ServerWebSocket socket, Buffer buffer) {
+    try {
+      Broadcast.writeText(socket, buffer);
+    } catch (IllegalStateException e) {
+      // Socket closed
+      remove(socket);
+    }
+  }
+}
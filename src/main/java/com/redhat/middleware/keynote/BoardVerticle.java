@@ -1,17 +1,20 @@
 package com.redhat.middleware.keynote;
 
 import io.vertx.core.AbstractVerticle;
-import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.http.ServerWebSocket;
-import io.vertx.core.json.JsonArray;
 
 /**
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class BoardVerticle extends AbstractVerticle {
 
+  private BoardHub scoreBoard;
+  private BoardHub leaderBoard;
+
   @Override
   public void start() throws Exception {
+    scoreBoard = new BoardHub(vertx, "/scores");
+    leaderBoard = new BoardHub(vertx, "/leaders");
     vertx.createHttpServer()
         .requestHandler(req -> {
           req.response().end();
@@ -31,15 +34,18 @@ public class BoardVerticle extends AbstractVerticle {
 
   private void onScoreBoard(ServerWebSocket ws) {
     // This WS is used to push the score periodically
-    MessageConsumer<JsonArray> consumer = vertx.eventBus().consumer("/scores");
-    ws.closeHandler(v -> consumer.unregister());
-    consumer.handler(message -> ws.writeFinalTextFrame(message.body().encode()));
+    scoreBoard.add(ws, isDelta(ws));
   }
 
 
   private void onLeaderBoard(ServerWebSocket ws) {
-    MessageConsumer<JsonArray> consumer = vertx.eventBus().consumer("/leaders");
-    ws.closeHandler(v -> consumer.unregister());
-    consumer.handler(message -> ws.writeFinalTextFrame(message.body().encode()));
+    leaderBoard.add(ws, isDelta(ws));
+  }
+
+  /**
+   * @return whether the board asked for deltas ({@code ?delta=true})
+   */
+  private static boolean isDelta(ServerWebSocket ws) {
+    return ws.query() != null && ws.query().contains("delta=true");
   }
 }
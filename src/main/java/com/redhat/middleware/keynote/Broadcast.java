@@ -0,0 +1,152 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.impl.FrameType;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A message sent to many sockets, encoded once (JSON text and binary protocol frame) by the sender.
+ * <p>
+ * Broadcasts are immutable: the event bus codec hands the same instance to every local consumer, and the same bytes
+ * are written to every socket. Messages sent to a whole team are published once on the {@link #teamAddress(int)}
+ * topic, messages sent to all the players on the {@link #ALL_ADDRESS} topic. Each server verticle subscribes once to
+ * these topics and writes the messages to the player sockets it manages (the team of a player is passed back in the
+ * {@link #TEAM_HEADER} header of the registration reply).
+ */
+public final class Broadcast {
+
+  /**
+   * Header of the registration reply carrying the team number of the player.
+   */
+  public static final String TEAM_HEADER = "team";
+
+  /**
+   * Address on which the messages for all the players are published.
+   */
+  public static final String ALL_ADDRESS = "redhat.team.all.broadcast";
+
+  private final String type;
+  private final Buffer text;
+  private final Buffer binary;
+
+  private Broadcast(String type, Buffer text, Buffer binary) {
+    this.type = type;
+    this.text = text;
+    this.binary = binary;
+  }
+
+  /**
+   * @param message the message, as sent to a single socket
+   * @return the encoded broadcast
+   */
+  public static Broadcast of(Map<String, Object> message) {
+    JsonObject json = new JsonObject(message);
+    return new Broadcast(json.getString("type", ""), Buffer.buffer(json.encode()), BinaryProtocol.encode(json));
+  }
+
+  /**
+   * @param team the team number
+   * @return the address on which the messages for all the players of the team are published
+   */
+  public static String teamAddress(int team) {
+    return "redhat.team." + team + ".broadcast";
+  }
+
+  /**
+   * Registers the broadcast codec on the event bus of the given Vert.x instance, if not done yet.
+   */
+  public static void registerCodec(Vertx vertx) {
+    try {
+      vertx.eventBus().registerDefaultCodec(Broadcast.class, new Codec());
+    } catch (IllegalStateException e) {
+      // Already registered by another verticle
+    }
+  }
+
+  /**
+   * Writes the broadcast to a socket. Must be called from the context of the socket.
+   *
+   * @param socket the socket
+   * @param binary whether the socket uses the binary protocol
+   */
+  public void write(ServerWebSocket socket, boolean binary) {
+    GameMetrics.FRAMES_OUT.mark();
+    if (binary) {
+      socket.writeFinalBinaryFrame(this.binary);
+    } else {
+      writeText(socket, text);
+    }
+  }
+
+  /**
+   * Writes a final text frame without copying the buffer into a string, the same buffer can be written to many
+   * sockets.
+   * <p>
+   * Relies on {@code BufferImpl.getByteBuf()} returning a new {@code duplicate()} on each call: every frame reads the
+   * bytes with its own reader index and the reader index of the shared buffer is never moved.
+   *
+   * @param socket the socket
+   * @param text   the UTF-8 encoded text
+   */
+  static void writeText(ServerWebSocket socket, Buffer text) {
+    socket.writeFrame(new WebSocketFrameImpl(FrameType.TEXT, text.getByteBuf(), true));
+  }
+
+  /**
+   * @return the type of the message, empty if not set
+   */
+  public String type() {
+    return type;
+  }
+
+  public String text() {
+    return text.toString();
+  }
+
+  static class Codec implements MessageCodec<Broadcast, Broadcast> {
+
+    @Override
+    public void encodeToWire(Buffer buffer, Broadcast broadcast) {
+      byte[] type = broadcast.type.getBytes(StandardCharsets.UTF_8);
+      buffer.appendInt(type.length).appendBytes(type)
+          .appendInt(broadcast.text.length()).appendBuffer(broadcast.text)
+          .appendInt(broadcast.binary.length()).appendBuffer(broadcast.binary);
+    }
+
+    @Override
+    public Broadcast decodeFromWire(int pos, Buffer buffer) {
+      int typeLength = buffer.getInt(pos);
+      String type = new String(buffer.getBytes(pos + 4, pos + 4 + typeLength), StandardCharsets.UTF_8);
+      pos += 4 + typeLength;
+      int textLength = buffer.getInt(pos);
+      Buffer text = buffer.getBuffer(pos + 4, pos + 4 + textLength);
+      pos += 4 + textLength;
+      int binaryLength = buffer.getInt(pos);
+      Buffer binary = buffer.getBuffer(pos + 4, pos + 4 + binaryLength);
+      return new Broadcast(type, text, binary);
+    }
+
+    @Override
+    public Broadcast transform(Broadcast broadcast) {
+      // Immutable, shared by the local consumers
+      return broadcast;
+    }
+
+    @Override
+    public String name() {
+      return "broadcast";
+    }
+
+    @Override
+    public byte systemCodecID() {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Launcher;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.metrics.MetricsOptions;
+import io.vertx.ext.dropwizard.DropwizardMetricsOptions;
+
+/**
+ * Vert.x launcher reporting the Vert.x metrics in the same registry as the {@link GameMetrics}.
+ * <p>
+ * The Vert.x metrics are enabled by default, they can be disabled with {@code -Dvertx-metrics=false}. The
+ * {@code vertx.metrics.options.*} system properties are still honored.
+ */
+public class GameLauncher extends Launcher {
+
+  public static void main(String[] args) {
+    new GameLauncher().dispatch(args);
+  }
+
+  @Override
+  public void beforeStartingVertx(VertxOptions options) {
+    MetricsOptions metricsOptions = options.getMetricsOptions();
+    DropwizardMetricsOptions dropwizardOptions = metricsOptions instanceof DropwizardMetricsOptions
+        ? (DropwizardMetricsOptions) metricsOptions
+        : new DropwizardMetricsOptions(metricsOptions);
+    if (Boolean.parseBoolean(System.getProperty("vertx-metrics", "true"))) {
+      dropwizardOptions.setEnabled(true);
+    }
+    if (dropwizardOptions.getRegistryName() == null) {
+      dropwizardOptions.setRegistryName(GameMetrics.REGISTRY_NAME);
+    }
+    options.setMetricsOptions(dropwizardOptions);
+  }
+}
@@ -0,0 +1,179 @@
+package com.redhat.middleware.keynote;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application metrics of the game server.
+ * <p>
+ * The metrics live in the {@value #REGISTRY_NAME} shared Dropwizard registry, also used by the Vert.x metrics when
+ * started with the {@link GameLauncher}. Counters and meters are backed by striped adders and timers only take a
+ * shared lock, so recording is cheap enough to stay enabled in production. The registry is exposed on
+ * {@code /metrics} using the Prometheus text format.
+ */
+public class GameMetrics {
+
+  public static final String REGISTRY_NAME = "game";
+
+  private static final MetricRegistry REGISTRY = SharedMetricRegistries.getOrCreate(REGISTRY_NAME);
+
+  /**
+   * Frames received from the sockets.
+   */
+  public static final Meter FRAMES_IN = REGISTRY.meter("game.frames.in");
+
+  /**
+   * Frames written to the sockets.
+   */
+  public static final Meter FRAMES_OUT = REGISTRY.meter("game.frames.out");
+
+  /**
+   * Score frames above the rate of their connection, merged with another one before being forwarded.
+   */
+  public static final Meter FRAMES_IN_COALESCED = REGISTRY.meter("game.frames.in.coalesced");
+
+  /**
+   * Messages not written to slow sockets, superseded by a later message of the same type.
+   */
+  public static final Meter FRAMES_OUT_COALESCED = REGISTRY.meter("game.frames.out.coalesced");
+
+  /**
+   * Player sockets rejected because the event loop was lagging.
+   */
+  public static final Meter SOCKETS_REJECTED = REGISTRY.meter("game.sockets.rejected");
+
+  /**
+   * Delay in ms of the server verticle event loops, measured on a timer.
+   */
+  public static final Histogram EVENT_LOOP_LAG = REGISTRY.histogram("game.eventloop.lag");
+
+  /**
+   * Time spent handing a player frame to the event bus ({@code id/message}).
+   */
+  public static final Timer EVENT_BUS_SEND = REGISTRY.timer("game.eventbus.send");
+
+  /**
+   * Score server requests, from the request to the response body, retries excluded.
+   */
+  public static final Timer SCORE_REQUEST = REGISTRY.timer("game.score.request");
+
+  public static final Counter SCORE_RETRIES = REGISTRY.counter("game.score.retries");
+
+  /**
+   * Score updates dropped after the last retry.
+   */
+  public static final Counter SCORE_RETRIES_EXHAUSTED = REGISTRY.counter("game.score.retries.exhausted");
+
+  public static final Timer ACHIEVEMENT_PUT = REGISTRY.timer("game.achievement.put");
+
+  /**
+   * Score summary requests of the score timer, from the request to the response body.
+   */
+  public static final Timer SCORE_POLL = REGISTRY.timer("game.scoretimer.poll");
+
+  /**
+   * Score timer cycles, from the summary request to the publication of the scores.
+   */
+  public static final Timer SCORE_TIMER_CYCLE = REGISTRY.timer("game.scoretimer.cycle");
+
+  public static MetricRegistry registry() {
+    return REGISTRY;
+  }
+
+  /**
+   * @param team the team number
+   * @return the number of players of the team managed in this JVM
+   */
+  public static Counter teamPlayers(int team) {
+    return REGISTRY.counter("game.team." + team + ".players");
+  }
+
+  /**
+   * Records the time elapsed since {@code start}.
+   *
+   * @param timer the timer
+   * @param start the start time, from {@link System#nanoTime()}
+   */
+  public static void stop(Timer timer, long start) {
+    timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the metrics using the Prometheus text format, durations are in seconds
+   */
+  public static String scrape() {
+    StringBuilder builder = new StringBuilder(4096);
+    for (Map.Entry<String, Metric> entry : REGISTRY.getMetrics().entrySet()) {
+      String name = sanitize(entry.getKey());
+      Metric metric = entry.getValue();
+      if (metric instanceof Timer) {
+        Timer timer = (Timer) metric;
+        summary(builder, name + "_seconds", timer.getSnapshot(), timer.getCount(), 1.0d / TimeUnit.SECONDS.toNanos(1));
+        sample(builder, name + "_rate1m", "gauge", timer.getOneMinuteRate());
+      } else if (metric instanceof Histogram) {
+        Histogram histogram = (Histogram) metric;
+        summary(builder, name, histogram.getSnapshot(), histogram.getCount(), 1.0d);
+      } else if (metric instanceof Meter) {
+        Meter meter = (Meter) metric;
+        sample(builder, name + "_total", "counter", meter.getCount());
+        sample(builder, name + "_rate1m", "gauge", meter.getOneMinuteRate());
+      } else if (metric instanceof Counting) {
+        sample(builder, name, "gauge", ((Counting) metric).getCount());
+      } else if (metric instanceof Gauge) {
+        Object value = ((Gauge) metric).getValue();
+        if (value instanceof Number) {
+          sample(builder, name, "gauge", ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+          sample(builder, name, "gauge", (Boolean) value ? 1 : 0);
+        }
+      }
+    }
+    return builder.toString();
+  }
+
+  private static void summary(StringBuilder builder, String name, Snapshot snapshot, long count, double factor) {
+    builder.append("# TYPE ").append(name).append(" summary\n");
+    quantile(builder, name, "0.5", snapshot.getMedian() * factor);
+    quantile(builder, name, "0.75", snapshot.get75thPercentile() * factor);
+    quantile(builder, name, "0.95", snapshot.get95thPercentile() * factor);
+    quantile(builder, name, "0.99", snapshot.get99thPercentile() * factor);
+    quantile(builder, name, "0.999", snapshot.get999thPercentile() * factor);
+    builder.append(name).append("_count ").append(count).append('\n');
+    sample(builder, name + "_max", "gauge", snapshot.getMax() * factor);
+  }
+
+  private static void quantile(StringBuilder builder, String name, String quantile, double value) {
+    builder.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder builder, String name, String type, double value) {
+    builder.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+        .append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder builder, String name, String type, long value) {
+    builder.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+        .append(name).append(' ').append(value).append('\n');
+  }
+
+  static String sanitize(String name) {
+    StringBuilder builder = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == ':' || c >= '0' && c <= '9' && i > 0;
+      builder.append(valid ? c : '_');
+    }
+    return builder.toString();
+  }
+}
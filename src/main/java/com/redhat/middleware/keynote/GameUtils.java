@@ -1,9 +1,14 @@
 package com.redhat.middleware.keynote;
 
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
 import java.net.MalformedURLException;
 import java.net.URL;
 
 public class GameUtils {
+  private final static Logger LOGGER = LoggerFactory.getLogger(GameUtils.class);
+
   public static class Endpoint {
     private final String host;
     private final int port;
@@ -55,4 +60,24 @@ public class GameUtils {
     }
     return result;
   }
+
+  /**
+   * Endpoint of an external service, set by the {@code env} (URL) and {@code env_PORT} variables. Without the port
+   * variable, the internal stand-in served on the test port is used and a warning is logged.
+   *
+   * @param env      the name of the URL variable, also the prefix of the port variable
+   * @param path     the path of the service when the URL variable is not set
+   * @param testPort the port of the internal stand-ins
+   * @param testPath the path of the stand-in
+   * @return the endpoint
+   */
+  public static Endpoint retrieveServiceEndpoint(final String env, final String path, final int testPort,
+                                                 final String testPath) {
+    String port = System.getenv(env + "_PORT");
+    if (port == null) {
+      LOGGER.warn(env + "_PORT is not set, using the internal stand-in " + testPath);
+      return retrieveEndpoint(env, testPort, testPath);
+    }
+    return retrieveEndpoint(env, Integer.parseInt(port.trim()), path);
+  }
 }
@@ -2,11 +2,14 @@ package com.redhat.middleware.keynote;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -38,6 +41,28 @@ public class InternalServiceVerticle extends AbstractVerticle {
     "\"description\": \"The TOP_SCORE achievement\"" +
     "}]";
 
+  // Achievements of a player as returned by GET /api/achievement/:uuid
+  public static String defaultPlayerAchievements = "[{" +
+    "\"achievementType\": \"TOP_SCORE\"," +
+    "\"description\": \"The TOP_SCORE achievement\"," +
+    "\"achieved\": true" +
+    "}]";
+
+  /**
+   * Connections accepted by the internal endpoints, for testing purpose.
+   */
+  public static final AtomicInteger connections = new AtomicInteger();
+
+  /**
+   * Score summary requests received by the score server stand-in, for testing purpose.
+   */
+  public static final AtomicInteger scoreSummaryRequests = new AtomicInteger();
+
+  /**
+   * Score batches received by the score server stand-in, for testing purpose.
+   */
+  public static final AtomicInteger scoreBatchRequests = new AtomicInteger();
+
   @Override
   public void start(Future<Void> future) throws Exception {
     Router internalRouter = Router.router(vertx);
@@ -47,11 +72,13 @@ public class InternalServiceVerticle extends AbstractVerticle {
     internalRouter.get("/testMechanicsServer").handler(this::testMechanicsServer);
     // internalRouter.putWithRegex("/testAchievementServer/achievement/update/.*").handler(this::testAchievementServerUpdate);
     internalRouter.getWithRegex("/testAchievementServer/achievement/.*").handler(this::testAchievementServerAchievement);
+    internalRouter.post("/testAchievementServer/achievement/bulk").handler(this::testAchievementServerBulk);
     internalRouter.delete("/testAchievementServer/reset").handler(this::testAchievementServerReset);
     internalRouter.post("/testScoreServer").handler(this::testScoreServer);
     internalRouter.post("/updateScores").handler(this::updateScores);
 
     vertx.createHttpServer()
+        .connectionHandler(connection -> connections.incrementAndGet())
         .requestHandler(internalRouter::accept)
         .listen(config().getInteger("innerPort", 9002), ar -> {
           if (ar.succeeded()) {
@@ -66,7 +93,8 @@ public class InternalServiceVerticle extends AbstractVerticle {
 
   private void configurationUpdated(RoutingContext context) {
     JsonObject json = new JsonObject().put("event", "configurationUpdated");
-    vertx.eventBus().publish("configurationUpdated", json);
+    // A single game verticle retrieves the configuration and publishes it
+    vertx.eventBus().send("configurationUpdated", json);
     context.response().setStatusCode(200).end("OK");
   }
 
@@ -85,6 +113,18 @@ public class InternalServiceVerticle extends AbstractVerticle {
     context.response().end(defaultAchievements);
   }
 
+  /**
+   * Replies to a bulk request (array of uuids) with the default achievements for every player.
+   */
+  private void testAchievementServerBulk(RoutingContext context) {
+    JsonArray uuids = new JsonArray(context.getBodyAsString());
+    JsonObject response = new JsonObject();
+    for (int i = 0; i < uuids.size(); i++) {
+      response.put(uuids.getString(i), new JsonArray(defaultPlayerAchievements));
+    }
+    context.response().end(response.encode());
+  }
+
   private void testAchievementServerReset(RoutingContext context) {
     System.out.println("Received Achievement reset on path " + context.request().path());
     context.response().setStatusCode(204).end();
@@ -94,12 +134,51 @@ public class InternalServiceVerticle extends AbstractVerticle {
     final JsonObject body = context.getBodyAsJson();
     final String lookup = (String) body.getValue("lookup");
     if ("SummarySession".equals(lookup)) {
+        scoreSummaryRequests.incrementAndGet();
         context.response().end(defaultScoreSummary);
+    } else if (isBatch(body)) {
+        scoreBatchRequests.incrementAndGet();
+        context.response().end(batchScore(body));
     } else {
         context.response().end(defaultScore);
     }
   }
 
+  private boolean isBatch(JsonObject body) {
+    JsonArray commands = body.getJsonArray("commands", new JsonArray());
+    for (int i = 0; i < commands.size(); i++) {
+      String identifier = outIdentifier(commands.getJsonObject(i));
+      if (identifier != null && !identifier.equals("newAchievements")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Replies to a batch with the default achievements for every player.
+   */
+  private String batchScore(JsonObject body) {
+    JsonObject response = new JsonObject(defaultScore);
+    JsonObject executionResults = response.getJsonObject("result").getJsonObject("execution-results");
+    JsonObject value = executionResults.getJsonArray("results").getJsonObject(0).getJsonObject("value");
+    JsonArray results = new JsonArray();
+    JsonArray commands = body.getJsonArray("commands");
+    for (int i = 0; i < commands.size(); i++) {
+      String identifier = outIdentifier(commands.getJsonObject(i));
+      if (identifier != null) {
+        results.add(new JsonObject().put("key", identifier).put("value", value.copy()));
+      }
+    }
+    executionResults.put("results", results).put("facts", new JsonArray());
+    return response.encode();
+  }
+
+  private static String outIdentifier(JsonObject command) {
+    JsonObject insert = command.getJsonObject("insert");
+    return insert == null ? null : insert.getString("out-identifier");
+  }
+
   private void updateScores(RoutingContext context) {
     vertx.eventBus().publish("/scores", context.getBodyAsJsonArray());
     context.response().setStatusCode(200).end("OK");
@@ -0,0 +1,215 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the KIE batch execution payloads sent to the score server.
+ * <p>
+ * The constant parts of the payloads are encoded once, the variable parts are streamed into the buffer (strings are
+ * JSON-escaped, numbers are written digit by digit) so no intermediate String is created. Vert.x buffers can be
+ * written several times, so the constant payloads are shared and the retries resend the same buffer.
+ */
+public class KieCommandWriter {
+
+  private static final byte[] SCORE_SESSION = ascii("{\"lookup\":\"ScoreSession\",\"commands\":[");
+  private static final byte[] SUMMARY_SESSION = ascii("{\"lookup\":\"SummarySession\",\"commands\":[");
+  private static final byte[] PLAYER_UUID = ascii("{\"insert\":{\"object\":{\"com.redhatkeynote.score.Player\":{\"uuid\":");
+  private static final byte[] PLAYER_USERNAME = ascii(",\"username\":");
+  private static final byte[] PLAYER_TEAM = ascii(",\"team\":");
+  private static final byte[] PLAYER_SCORE = ascii(",\"score\":");
+  private static final byte[] PLAYER_CONSECUTIVE_POPS = ascii(",\"consecutivePops\":");
+  private static final byte[] PLAYER_GOLDEN_SNITCH = ascii(",\"goldenSnitch\":");
+  private static final byte[] PLAYER_END = ascii("}}}},");
+  private static final byte[] ACHIEVEMENT_LIST = ascii("{\"insert\":{\"object\":{\"com.redhatkeynote.score.AchievementList\":{");
+  private static final byte[] UUID_FIELD = ascii("\"uuid\":");
+  private static final byte[] OUT_IDENTIFIER = ascii("}},\"out-identifier\":\"");
+  private static final byte[] RETURN_OBJECT = ascii("\",\"return-object\":true}},");
+  private static final byte[] DELETE_PLAYERS = ascii("{\"insert\":{\"object\":{\"com.redhatkeynote.score.DeletePlayers\":{}}}},");
+  private static final byte[] SCORE_SUMMARY = ascii("{\"insert\":{\"object\":{\"com.redhatkeynote.score.ScoreSummary\":{\"topPlayers\":");
+  private static final byte[] SCORE_SUMMARY_END = ascii("}},\"out-identifier\":\"scoreSummary\",\"return-object\":true}},");
+  private static final byte[] FIRE_ALL_RULES = ascii("{\"fire-all-rules\":{}}]}");
+  private static final byte[] TRUE = ascii("true");
+  private static final byte[] FALSE = ascii("false");
+  private static final byte[] NULL = ascii("null");
+  private static final byte[] HEX = ascii("0123456789abcdef");
+
+  private static final Buffer DELETE_SCORES = new KieCommandWriter(SCORE_SESSION, 256)
+      .deletePlayers()
+      .achievementList(null, "newAchievements")
+      .end();
+
+  private final Buffer buffer;
+
+  private KieCommandWriter(byte[] lookup, int sizeHint) {
+    buffer = Buffer.buffer(sizeHint).appendBytes(lookup);
+  }
+
+  /**
+   * Starts a {@code ScoreSession} payload.
+   *
+   * @param players the expected number of players, used to size the buffer
+   * @return the writer
+   */
+  public static KieCommandWriter scoreSession(int players) {
+    return new KieCommandWriter(SCORE_SESSION, 64 + players * 320);
+  }
+
+  /**
+   * @return the payload of the {@code ScoreSession} request deleting all the players
+   */
+  public static Buffer deleteScores() {
+    return DELETE_SCORES;
+  }
+
+  /**
+   * @param topPlayers the number of top players to retrieve
+   * @return the payload of the {@code SummarySession} request
+   */
+  public static Buffer scoreSummary(int topPlayers) {
+    KieCommandWriter writer = new KieCommandWriter(SUMMARY_SESSION, 256);
+    writer.buffer.appendBytes(SCORE_SUMMARY);
+    writer.appendInt(topPlayers);
+    writer.buffer.appendBytes(SCORE_SUMMARY_END);
+    return writer.end();
+  }
+
+  /**
+   * Convenience method writing the payload for a single player, the achievements are returned as
+   * {@code newAchievements}.
+   */
+  public static Buffer playerUpdate(String uuid, String username, int team, int score, int consecutivePops,
+                                    boolean goldenSnitch) {
+    return scoreSession(1)
+        .player(uuid, username, team, score, consecutivePops, goldenSnitch)
+        .achievementList(null, "newAchievements")
+        .end();
+  }
+
+  public KieCommandWriter player(String uuid, String username, int team, int score, int consecutivePops,
+                                 boolean goldenSnitch) {
+    buffer.appendBytes(PLAYER_UUID);
+    appendString(uuid);
+    buffer.appendBytes(PLAYER_USERNAME);
+    appendString(username);
+    buffer.appendBytes(PLAYER_TEAM);
+    appendInt(team);
+    buffer.appendBytes(PLAYER_SCORE);
+    appendInt(score);
+    buffer.appendBytes(PLAYER_CONSECUTIVE_POPS);
+    appendInt(consecutivePops);
+    buffer.appendBytes(PLAYER_GOLDEN_SNITCH);
+    buffer.appendBytes(goldenSnitch ? TRUE : FALSE);
+    buffer.appendBytes(PLAYER_END);
+    return this;
+  }
+
+  /**
+   * Inserts an achievement list returned with the given identifier.
+   *
+   * @param uuid          the player owning the list, {@code null} for an untagged list
+   * @param outIdentifier the identifier, must not require escaping
+   * @return the writer
+   */
+  public KieCommandWriter achievementList(String uuid, String outIdentifier) {
+    return achievementList(uuid, outIdentifier, -1);
+  }
+
+  /**
+   * Inserts an achievement list returned with the {@code outIdentifierPrefix + index} identifier.
+   *
+   * @param uuid                the player owning the list, {@code null} for an untagged list
+   * @param outIdentifierPrefix the identifier prefix, must not require escaping
+   * @param index               the index appended to the prefix, ignored if negative
+   * @return the writer
+   */
+  public KieCommandWriter achievementList(String uuid, String outIdentifierPrefix, int index) {
+    buffer.appendBytes(ACHIEVEMENT_LIST);
+    if (uuid != null) {
+      buffer.appendBytes(UUID_FIELD);
+      appendString(uuid);
+    }
+    buffer.appendBytes(OUT_IDENTIFIER);
+    buffer.appendString(outIdentifierPrefix);
+    if (index >= 0) {
+      appendInt(index);
+    }
+    buffer.appendBytes(RETURN_OBJECT);
+    return this;
+  }
+
+  private KieCommandWriter deletePlayers() {
+    buffer.appendBytes(DELETE_PLAYERS);
+    return this;
+  }
+
+  /**
+   * Appends the {@code fire-all-rules} command and closes the payload.
+   *
+   * @return the payload
+   */
+  public Buffer end() {
+    buffer.appendBytes(FIRE_ALL_RULES);
+    return buffer;
+  }
+
+  private void appendInt(int value) {
+    if (value == Integer.MIN_VALUE) {
+      buffer.appendString(Integer.toString(value));
+      return;
+    }
+    if (value < 0) {
+      buffer.appendByte((byte) '-');
+      value = -value;
+    }
+    int divisor = 1;
+    while (value / divisor >= 10) {
+      divisor *= 10;
+    }
+    while (divisor > 0) {
+      buffer.appendByte((byte) ('0' + (value / divisor) % 10));
+      divisor /= 10;
+    }
+  }
+
+  private void appendString(String value) {
+    if (value == null) {
+      buffer.appendBytes(NULL);
+      return;
+    }
+    buffer.appendByte((byte) '"');
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.appendByte((byte) '\\').appendByte((byte) c);
+      } else if (c < 0x20) {
+        buffer.appendByte((byte) '\\').appendByte((byte) 'u').appendByte((byte) '0').appendByte((byte) '0')
+            .appendByte(HEX[c >> 4]).appendByte(HEX[c & 0xF]);
+      } else if (c < 0x80) {
+        buffer.appendByte((byte) c);
+      } else if (c < 0x800) {
+        buffer.appendByte((byte) (0xC0 | (c >> 6))).appendByte((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer.appendByte((byte) (0xF0 | (codePoint >> 18)))
+            .appendByte((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+            .appendByte((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+            .appendByte((byte) (0x80 | (codePoint & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        // Lone surrogate, not representable in UTF-8
+        buffer.appendByte((byte) '?');
+      } else {
+        buffer.appendByte((byte) (0xE0 | (c >> 12)))
+            .appendByte((byte) (0x80 | ((c >> 6) & 0x3F)))
+            .appendByte((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    buffer.appendByte((byte) '"');
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,132 @@
+package com.redhat.middleware.keynote;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Extracts the results of a KIE batch execution response without decoding the whole document.
+ * <p>
+ * The response is read token by token: the {@code msg}, the {@code facts} and the results not matching the
+ * requested key are skipped, only the matching result values are decoded. The value of a result is unwrapped from
+ * its class name, i.e. for {@code "value" : {"com.redhatkeynote.score.AchievementList":{ "achievements" : [...] }}}
+ * the returned object is {@code { "achievements" : [...] }}.
+ */
+public class KieResponseParser {
+
+  /**
+   * @param body      the response body
+   * @param keyPrefix the prefix of the result keys to extract
+   * @return the unwrapped values of the matching results indexed by key, {@code null} if the response type is not
+   * {@code SUCCESS}
+   * @throws DecodeException if the body is not a valid JSON document
+   */
+  public static Map<String, JsonObject> extractResults(Buffer body, String keyPrefix) {
+    Map<String, JsonObject> results = new LinkedHashMap<>();
+    String type = null;
+    try (JsonParser parser = Json.mapper.getFactory().createParser(new ByteBufInputStream(body.getByteBuf()))) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new DecodeException("Expected a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if ("type".equals(field)) {
+          type = parser.getValueAsString();
+        } else if ("result".equals(field) && token == JsonToken.START_OBJECT) {
+          readResult(parser, keyPrefix, results);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } catch (IOException e) {
+      throw new DecodeException("Failed to decode KIE response: " + e.getMessage());
+    }
+    return "SUCCESS".equals(type) ? results : null;
+  }
+
+  /**
+   * @return the unwrapped value of the result with the given key, {@code null} if not found or if the response type
+   * is not {@code SUCCESS}
+   */
+  public static JsonObject extractResult(Buffer body, String key) {
+    Map<String, JsonObject> results = extractResults(body, key);
+    return results == null ? null : results.get(key);
+  }
+
+  // { "execution-results" : { "results" : [...], "facts" : [...] } }
+  private static void readResult(JsonParser parser, String keyPrefix, Map<String, JsonObject> results)
+      throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("execution-results".equals(field) && token == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String inner = parser.getCurrentName();
+          JsonToken innerToken = parser.nextToken();
+          if ("results".equals(inner) && innerToken == JsonToken.START_ARRAY) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+              readEntry(parser, keyPrefix, results);
+            }
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  // { "key" : "...", "value" : { "class.Name" : { ... } } }
+  private static void readEntry(JsonParser parser, String keyPrefix, Map<String, JsonObject> results)
+      throws IOException {
+    String key = null;
+    JsonObject value = null;
+    boolean valueBeforeKey = false;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("key".equals(field)) {
+        key = parser.getValueAsString();
+      } else if ("value".equals(field) && token == JsonToken.START_OBJECT) {
+        if (key == null) {
+          // Unusual ordering, we cannot decide yet so decode it
+          valueBeforeKey = true;
+          value = readValue(parser);
+        } else if (key.startsWith(keyPrefix)) {
+          value = readValue(parser);
+        } else {
+          parser.skipChildren();
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (key != null && value != null && (!valueBeforeKey || key.startsWith(keyPrefix))) {
+      results.put(key, value);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JsonObject readValue(JsonParser parser) throws IOException {
+    JsonObject value = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      JsonToken token = parser.nextToken();
+      if (value == null && token == JsonToken.START_OBJECT) {
+        value = new JsonObject(parser.readValueAs(Map.class));
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return value;
+  }
+}
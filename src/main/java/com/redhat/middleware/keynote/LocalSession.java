@@ -0,0 +1,195 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process handle between a player web socket and the game verticle owning the player, used when both are
+ * deployed in the same JVM.
+ * <p>
+ * Instead of going through the event bus twice per frame (and registering two clustered consumers per player),
+ * messages are handed over directly to the context of the other side. The game verticle binds the session when it
+ * accepts the player, the server verticle attaches the socket once it gets the player id. The messages sent to the
+ * socket in between are queued and written once it is attached.
+ */
+public class LocalSession {
+
+  /**
+   * Header set on the announce message by a server verticle accepting co-located routing.
+   */
+  public static final String NODE_HEADER = "node";
+
+  /**
+   * Identifies this JVM. A game verticle receiving an announce message carrying this value knows the socket lives
+   * in the same JVM.
+   */
+  public static final String NODE = UUID.randomUUID().toString();
+
+  private static final Map<String, LocalSession> SESSIONS = new ConcurrentHashMap<>();
+
+  private final String id;
+  private final Context gameContext;
+  private final Handler<Map<String, Object>> gameHandler;
+  private final ScoreHandler scoreHandler;
+
+  private volatile Context socketContext;
+  private volatile Handler<Object> socketHandler;
+  // Messages sent before the socket is attached, null once attached or detached
+  private List<Object> pending = new ArrayList<>();
+
+  private LocalSession(String id, Context gameContext, Handler<Map<String, Object>> gameHandler,
+                       ScoreHandler scoreHandler) {
+    this.id = id;
+    this.gameContext = gameContext;
+    this.gameHandler = gameHandler;
+    this.scoreHandler = scoreHandler;
+  }
+
+  /**
+   * Receives the score frames sent using the binary protocol.
+   */
+  @FunctionalInterface
+  public interface ScoreHandler {
+    void score(int score, int consecutive, boolean goldenSnitchPopped);
+  }
+
+  /**
+   * Binds a new session. Must be called from the game verticle context, the handler will always be called on this
+   * context.
+   *
+   * @param id           the player id
+   * @param gameHandler  the handler receiving the events (same structure as the one sent on the event bus)
+   * @param scoreHandler the handler receiving the binary score frames
+   * @return the session
+   */
+  public static LocalSession bind(String id, Handler<Map<String, Object>> gameHandler, ScoreHandler scoreHandler) {
+    LocalSession session = new LocalSession(id, Vertx.currentContext(), gameHandler, scoreHandler);
+    SESSIONS.put(id, session);
+    return session;
+  }
+
+  /**
+   * @param id the player id
+   * @return the session bound to the given id in this JVM, {@code null} if the player is managed remotely.
+   */
+  public static LocalSession lookup(String id) {
+    return SESSIONS.get(id);
+  }
+
+  public String id() {
+    return id;
+  }
+
+  /**
+   * Removes the session, messages sent to the socket are dropped from now on.
+   */
+  public void unbind() {
+    SESSIONS.remove(id, this);
+    detach();
+  }
+
+  /**
+   * Attaches the socket side. Must be called from the server verticle context, the handler will always be called on
+   * this context.
+   *
+   * @param handler the handler writing to the socket, receives {@link JsonObject} and {@link Broadcast} messages
+   */
+  public void attach(Handler<Object> handler) {
+    List<Object> queued;
+    synchronized (this) {
+      if (pending == null) {
+        // Already detached
+        return;
+      }
+      socketContext = Vertx.currentContext();
+      socketHandler = handler;
+      queued = pending;
+      pending = null;
+    }
+    if (!queued.isEmpty()) {
+      // Written after the frames sent by the caller once attached (the player id)
+      socketContext.runOnContext(v -> queued.forEach(handler::handle));
+    }
+  }
+
+  /**
+   * Detaches the socket side, messages sent to the socket are dropped from now on.
+   */
+  public synchronized void detach() {
+    socketHandler = null;
+    pending = null;
+  }
+
+  public boolean isAttached() {
+    return socketHandler != null;
+  }
+
+  /**
+   * Sends an event to the game verticle.
+   *
+   * @param event the event, same structure as the event sent on the {@code id/message} address
+   */
+  public void sendToGame(JsonObject event) {
+    Map<String, Object> map = event.getMap();
+    Object message = map.get("message");
+    if (message instanceof JsonObject) {
+      map.put("message", ((JsonObject) message).getMap());
+    }
+    gameContext.runOnContext(v -> gameHandler.handle(map));
+  }
+
+  /**
+   * Sends a score decoded from a binary frame to the game verticle.
+   */
+  public void sendScore(int score, int consecutive, boolean goldenSnitchPopped) {
+    gameContext.runOnContext(v -> scoreHandler.score(score, consecutive, goldenSnitchPopped));
+  }
+
+  /**
+   * Sends a message to the socket, queued until the socket is attached. The message must not be modified once sent.
+   *
+   * @param message the message
+   * @return {@code true} if the message has been handed over or queued, {@code false} if the socket is detached.
+   */
+  public boolean sendToSocket(Map<String, Object> message) {
+    return handOver(new JsonObject(message));
+  }
+
+  /**
+   * Sends an already encoded message to the socket, queued until the socket is attached.
+   *
+   * @param broadcast the message
+   * @return {@code true} if the message has been handed over or queued, {@code false} if the socket is detached.
+   */
+  public boolean sendToSocket(Broadcast broadcast) {
+    return handOver(broadcast);
+  }
+
+  private boolean handOver(Object message) {
+    Handler<Object> handler = socketHandler;
+    if (handler == null) {
+      synchronized (this) {
+        if (pending != null) {
+          pending.add(message);
+          return true;
+        }
+        // Attached or detached meanwhile
+        handler = socketHandler;
+      }
+      if (handler == null) {
+        return false;
+      }
+    }
+    Handler<Object> socket = handler;
+    socketContext.runOnContext(v -> socket.handle(message));
+    return true;
+  }
+}
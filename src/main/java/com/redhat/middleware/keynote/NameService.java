@@ -0,0 +1,327 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.Counter;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static com.redhat.middleware.keynote.LogUtils.format;
+
+/**
+ * Player names and identities of a node.
+ * <p>
+ * Each node leases blocks of positions of the name sequence ({@link UserNameGenerator#generate(long)}) from the
+ * {@value #BLOCK_COUNTER_NAME} cluster counter. The blocks are disjoint, so the names are unique in the cluster while
+ * being generated locally: a counter round-trip per block instead of one per player. The next block is leased when
+ * half of the current one is used, new players do not wait for it.
+ * <p>
+ * The names are still stored in the {@code redhat.player.name} cluster map, so a player reconnecting to another node
+ * keeps its name. The map stores the encoded names ({@link UserNameGenerator#encode(String)}), it is bounded and its
+ * idle entries are evicted (see {@code cluster.xml}). The names of the players seen by this node are kept in a
+ * {@link PlayerNameCache}, a reconnection to the same node does not read the cluster map.
+ * <p>
+ * A name is released when its player leaves: its entry is removed from the cluster map and from the near-caches, then
+ * this node hands the name out again once the name space is exhausted, before the numbered names. A name whose entry
+ * could not be removed is not handed out again, a returning player would share it. {@link #reset(Handler)} clears the
+ * map and restarts the name sequence of the cluster.
+ * <p>
+ * The service is shared by the game verticles of a Vert.x instance.
+ */
+public class NameService implements Shareable {
+
+  public static final String BLOCK_COUNTER_NAME = "redhat.player.name.block";
+  // Carries the id of a released name, removed from the near-caches
+  public static final String RELEASE_ADDRESS = "redhat.player.name.release";
+  // The name sequence restarts, the leased blocks and released names are dropped
+  public static final String RESET_ADDRESS = "redhat.player.name.reset";
+
+  private final static Logger LOGGER = LoggerFactory.getLogger(NameService.class);
+
+  private static final String LOCAL_MAP_NAME = "redhat.player.name.service";
+  private static final String LOCAL_MAP_KEY = "service";
+
+  private static final long LEASE_RETRY = 1000;
+
+  private final Vertx vertx;
+  private final Counter blocks;
+  private final AsyncMap<String, Object> names;
+  private final int blockSize;
+  private final PlayerNameCache nearCache;
+
+  // Guarded by this
+  private long next;
+  private long end;
+  // Start of the block leased in advance, -1 if none
+  private long spare = -1;
+  private boolean leasing;
+  private final Deque<Handler<String>> waiting = new ArrayDeque<>();
+  // Codes of the released names, handed out again once the name space is exhausted
+  private final Deque<Long> released = new ArrayDeque<>();
+  // Incremented on reset, the leases and releases started before are dropped
+  private int generation;
+
+  private NameService(Vertx vertx, Counter blocks, AsyncMap<String, Object> names, int blockSize,
+                      PlayerNameCache nearCache) {
+    this.vertx = vertx;
+    this.blocks = blocks;
+    this.names = names;
+    this.blockSize = blockSize;
+    this.nearCache = nearCache;
+  }
+
+  /**
+   * Gets the service of the given Vert.x instance, creating it if needed.
+   *
+   * @param vertx     the Vert.x instance
+   * @param blocks    the {@value #BLOCK_COUNTER_NAME} counter
+   * @param names     the cluster-wide map of the player names by id
+   * @param blockSize the number of names leased at once
+   * @param nearCache the near-cache of the names
+   * @return the service
+   */
+  public static NameService share(Vertx vertx, Counter blocks, AsyncMap<String, Object> names, int blockSize,
+                                  PlayerNameCache nearCache) {
+    LocalMap<String, NameService> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+    NameService service = new NameService(vertx, blocks, names, blockSize, nearCache);
+    NameService existing = map.putIfAbsent(LOCAL_MAP_KEY, service);
+    if (existing != null) {
+      return existing;
+    }
+    vertx.eventBus().<String>consumer(RELEASE_ADDRESS, message -> nearCache.remove(message.body()));
+    vertx.eventBus().<Void>consumer(RESET_ADDRESS, message -> service.restart());
+    return service;
+  }
+
+  /**
+   * Generates a name unique in the cluster. The handler is called right away unless the leased names are exhausted,
+   * it is then called on the current context once a block has been leased.
+   *
+   * @param handler the handler receiving the name
+   */
+  public void generate(Handler<String> handler) {
+    String name;
+    synchronized (this) {
+      if (next == end && spare >= 0) {
+        next = spare;
+        end = spare + blockSize;
+        spare = -1;
+      }
+      if (next >= UserNameGenerator.capacity() && !released.isEmpty()) {
+        // Handed out again rather than a numbered name
+        name = UserNameGenerator.decode(released.poll());
+      } else if (next == end) {
+        Context context = Vertx.currentContext();
+        waiting.add(context == null ? handler : n -> context.runOnContext(v -> handler.handle(n)));
+        lease();
+        return;
+      } else {
+        name = UserNameGenerator.generate(next++);
+        if (end - next <= blockSize / 2 && spare < 0) {
+          lease();
+        }
+      }
+    }
+    handler.handle(name);
+  }
+
+  /**
+   * Stores the name of a new player.
+   *
+   * @param id   the player id
+   * @param name the player name
+   */
+  public void register(String id, String name) {
+    nearCache.put(id, name);
+    long code = UserNameGenerator.encode(name);
+    names.put(id, code >= 0 ? (Object) code : name, ar -> {
+      if (ar.failed()) {
+        LOGGER.warn(format("Put of player name in async map failed, id %1$s, name %2$s", id, name));
+      }
+    });
+  }
+
+  /**
+   * Releases the name of a player who left: the entry of the player is removed from the cluster map and from the
+   * near-caches, then the name can be handed out again. A name whose entry is not in the map (already released, or
+   * evicted) is not handed out again.
+   *
+   * @param id   the player id
+   * @param name the player name
+   */
+  public void release(String id, String name) {
+    nearCache.remove(id);
+    vertx.eventBus().publish(RELEASE_ADDRESS, id);
+    long code = UserNameGenerator.encode(name);
+    int current;
+    synchronized (this) {
+      current = generation;
+    }
+    // Only the entry of this name, a player holding another name keeps it
+    names.removeIfPresent(id, code >= 0 ? (Object) code : name, ar -> {
+      if (ar.failed()) {
+        LOGGER.warn(format("Remove of player name from async map failed, id %1$s, name %2$s", id, name));
+        return;
+      }
+      // The numbered names are not handed out again
+      if (ar.result() && code >= 0 && code < UserNameGenerator.capacity()) {
+        synchronized (this) {
+          if (generation == current) {
+            released.add(code);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Restarts the name sequence of the cluster: clears the cluster map of the names, resets the
+   * {@value #BLOCK_COUNTER_NAME} counter, then every node drops its leased blocks, released names and near-cache.
+   *
+   * @param handler called once the nodes have been notified
+   */
+  public void reset(Handler<AsyncResult<Void>> handler) {
+    names.clear(ar -> {
+      if (ar.failed()) {
+        handler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      resetBlocks(reset -> {
+        if (reset.succeeded()) {
+          vertx.eventBus().publish(RESET_ADDRESS, null);
+        }
+        handler.handle(reset);
+      });
+    });
+  }
+
+  /**
+   * Retrieves the name of a reconnecting player, from the near-cache when the player was seen by this node.
+   *
+   * @param id      the player id
+   * @param handler the handler receiving the name, {@code null} if unknown
+   */
+  public void lookup(String id, Handler<String> handler) {
+    String cached = nearCache.get(id);
+    if (cached != null) {
+      handler.handle(cached);
+      return;
+    }
+    names.get(id, ar -> {
+      String name = ar.succeeded() ? decode(ar.result()) : null;
+      if (name != null) {
+        nearCache.put(id, name);
+      }
+      handler.handle(name);
+    });
+  }
+
+  /**
+   * @return the number of names in the near-cache
+   */
+  public int cached() {
+    return nearCache.size();
+  }
+
+  /**
+   * Drops the leased blocks and the released names, the next names come from the restarted sequence.
+   */
+  synchronized void restart() {
+    generation++;
+    next = 0;
+    end = 0;
+    spare = -1;
+    released.clear();
+    nearCache.clear();
+    if (!waiting.isEmpty()) {
+      lease();
+    }
+  }
+
+  private void resetBlocks(Handler<AsyncResult<Void>> handler) {
+    blocks.get(ar -> {
+      if (ar.failed()) {
+        handler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      blocks.compareAndSet(ar.result(), 0, set -> {
+        if (set.failed()) {
+          handler.handle(Future.failedFuture(set.cause()));
+        } else if (set.result()) {
+          handler.handle(Future.succeededFuture());
+        } else {
+          // A block was leased meanwhile
+          resetBlocks(handler);
+        }
+      });
+    });
+  }
+
+  private static String decode(Object value) {
+    if (value instanceof Long) {
+      return UserNameGenerator.decode((Long) value);
+    }
+    // Not generated, or stored as a string by a previous version
+    return (String) value;
+  }
+
+  // Called with the lock held
+  private void lease() {
+    if (leasing) {
+      return;
+    }
+    leasing = true;
+    int current = generation;
+    blocks.getAndIncrement(ar -> {
+      List<Runnable> served = new ArrayList<>();
+      synchronized (this) {
+        leasing = false;
+        if (generation != current) {
+          // Leased before the reset, from the previous sequence
+          if (!waiting.isEmpty()) {
+            lease();
+          }
+          return;
+        }
+        if (ar.failed()) {
+          LOGGER.error("Unable to lease a block of player names", ar.cause());
+          if (!waiting.isEmpty()) {
+            vertx.setTimer(LEASE_RETRY, l -> {
+              synchronized (this) {
+                lease();
+              }
+            });
+          }
+          return;
+        }
+        long start = ar.result() * blockSize;
+        if (next == end) {
+          next = start;
+          end = start + blockSize;
+        } else {
+          spare = start;
+        }
+        while (!waiting.isEmpty() && next < end) {
+          Handler<String> handler = waiting.poll();
+          String name = UserNameGenerator.generate(next++);
+          served.add(() -> handler.handle(name));
+        }
+        if (!waiting.isEmpty() || end - next <= blockSize / 2 && spare < 0) {
+          lease();
+        }
+      }
+      served.forEach(Runnable::run);
+    });
+  }
+}
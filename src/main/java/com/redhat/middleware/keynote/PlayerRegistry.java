@@ -0,0 +1,46 @@
+package com.redhat.middleware.keynote;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The players of a team, indexed by id.
+ * <p>
+ * Adding and removing a player is O(1), and the broadcasts can iterate over the players while players connect or
+ * leave: the iteration is weakly consistent, it never fails and sees each player present for the whole iteration
+ * exactly once. An entry costs a map node (hash, id, player, next) and a table slot, the id is the one already held
+ * by the player.
+ *
+ * @param <P> the player type
+ */
+public class PlayerRegistry<P> implements Iterable<P> {
+
+  private final ConcurrentHashMap<String, P> players = new ConcurrentHashMap<>();
+
+  /**
+   * Adds a player, replacing the player registered with the same id.
+   */
+  public void add(String id, P player) {
+    players.put(id, player);
+  }
+
+  /**
+   * @return {@code true} if the player was registered
+   */
+  public boolean remove(String id, P player) {
+    return players.remove(id, player);
+  }
+
+  public P get(String id) {
+    return players.get(id);
+  }
+
+  public int size() {
+    return players.size();
+  }
+
+  @Override
+  public Iterator<P> iterator() {
+    return players.values().iterator();
+  }
+}
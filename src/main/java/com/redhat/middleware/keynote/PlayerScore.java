@@ -0,0 +1,81 @@
+package com.redhat.middleware.keynote;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Score of a player aggregated while a score server request is in flight, extended by the Groovy {@code Player}.
+ * <p>
+ * The aggregate is packed in a single {@code long} updated by CAS, so aggregating a score does not allocate:
+ * <ul>
+ * <li>bits 0-31: the highest score</li>
+ * <li>bits 32-60: the highest number of consecutive pops (saturated)</li>
+ * <li>bit 61: whether the golden snitch has been popped</li>
+ * <li>bits 62-63: the request state, idle (no request in flight), in flight or pending (a score is waiting for the
+ * request in flight)</li>
+ * </ul>
+ */
+public class PlayerScore {
+
+  private static final AtomicLongFieldUpdater<PlayerScore> STATE =
+      AtomicLongFieldUpdater.newUpdater(PlayerScore.class, "scoreState");
+
+  private static final long SCORE_MASK = 0xFFFFFFFFL;
+  private static final int CONSECUTIVE_SHIFT = 32;
+  private static final long CONSECUTIVE_MAX = (1L << 29) - 1;
+  private static final long GOLDEN_SNITCH = 1L << 61;
+  private static final long STATE_MASK = 3L << 62;
+  private static final long IN_FLIGHT = 0L;
+  private static final long IDLE = 1L << 62;
+  private static final long PENDING = 2L << 62;
+
+  private volatile long scoreState = IDLE;
+
+  /**
+   * Aggregates a score: the highest score and consecutive pops are kept, the golden snitch stays popped.
+   *
+   * @return {@code true} if no request is in flight, the caller must then {@link #takeScore()} and send it
+   */
+  public boolean offerScore(int score, int consecutive, boolean goldenSnitchPopped) {
+    for (; ; ) {
+      long current = scoreState;
+      long next = PENDING
+          | Math.max(score(current), score) & SCORE_MASK
+          | Math.min(Math.max(consecutive(current), consecutive), CONSECUTIVE_MAX) << CONSECUTIVE_SHIFT
+          | (goldenSnitchPopped ? GOLDEN_SNITCH : current & GOLDEN_SNITCH);
+      if (STATE.compareAndSet(this, current, next)) {
+        return (current & STATE_MASK) == IDLE;
+      }
+    }
+  }
+
+  /**
+   * Takes the aggregated score to send it, the request is then in flight.
+   *
+   * @return the packed score, read with {@link #score(long)}, {@link #consecutive(long)} and
+   * {@link #goldenSnitchPopped(long)}
+   */
+  public long takeScore() {
+    return STATE.getAndSet(this, IN_FLIGHT);
+  }
+
+  /**
+   * Ends the request in flight.
+   *
+   * @return {@code false} if a score came in meanwhile, the caller must then {@link #takeScore()} and send it
+   */
+  public boolean completeScore() {
+    return STATE.compareAndSet(this, IN_FLIGHT, IDLE);
+  }
+
+  public static int score(long packed) {
+    return (int) packed;
+  }
+
+  public static int consecutive(long packed) {
+    return (int) ((packed >>> CONSECUTIVE_SHIFT) & CONSECUTIVE_MAX);
+  }
+
+  public static boolean goldenSnitchPopped(long packed) {
+    return (packed & GOLDEN_SNITCH) != 0;
+  }
+}
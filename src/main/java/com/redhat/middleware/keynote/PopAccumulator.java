@@ -0,0 +1,310 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.Counter;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node-local balloon pop counts, flushed to the cluster-wide pop counters on a schedule.
+ * <p>
+ * A pop is a {@link LongAdder} increment instead of a Hazelcast round-trip. The accumulator is shared by the game
+ * verticles of a Vert.x instance, the first one creating it owns the flush timer. Each flush only sends the pops
+ * counted since the previous flush, a failed flush is sent again with the next one.
+ * <p>
+ * The counters are reset by epoch: {@link #reset(Handler)} increments the {@value #EPOCH_COUNTER_NAME} cluster counter
+ * and publishes the new epoch on {@link #RESET_ADDRESS}. The even and odd epochs alternate between two sets of
+ * counters (see {@link #counterPrefix(long)}), the counters of the new epoch are set to 0 before it is published: they
+ * were last used two epochs ago. Every node discards its pending pops when it enters the new epoch, the flushes of the
+ * previous epoch, in flight or sent by a node not in the new epoch yet, go to the previous counters: the new ones only
+ * count the pops made after the reset. The pops made on a node between the reset and the reception of the new epoch
+ * are not counted.
+ */
+public class PopAccumulator implements Shareable {
+
+  /**
+   * Address on which the epoch started by a reset is published.
+   */
+  public static final String RESET_ADDRESS = "redhat.team.pop.reset";
+
+  /**
+   * Cluster counter holding the current epoch.
+   */
+  public static final String EPOCH_COUNTER_NAME = "redhat.team.pop.epoch";
+
+  private final static Logger LOGGER = LoggerFactory.getLogger(PopAccumulator.class);
+
+  private static final String COUNTER_PREFIX = "redhat.team.pop";
+  private static final String LOCAL_MAP_NAME = "redhat.team.pop.accumulator";
+  private static final String LOCAL_MAP_KEY = "accumulator";
+
+  private static final long RETRY = 1000;
+
+  private final Vertx vertx;
+  private final Counter epochCounter;
+  // Indexed by team number
+  private final LongAdder[] pops;
+  private final long[] flushed;
+  // Guarded by this, the counters are null while being retrieved
+  private Counter[] counters;
+  private long epoch = -1;
+
+  PopAccumulator(Vertx vertx, Counter epochCounter, int numTeams) {
+    this.vertx = vertx;
+    this.epochCounter = epochCounter;
+    this.pops = new LongAdder[numTeams + 1];
+    this.flushed = new long[numTeams + 1];
+    for (int team = 1; team <= numTeams; team++) {
+      this.pops[team] = new LongAdder();
+    }
+  }
+
+  /**
+   * Gets the accumulator of the given Vert.x instance, creating it if needed. Must be called from a verticle
+   * context, the flush timer of a new accumulator runs on this context. The pops are flushed once the counters of
+   * the current epoch have been retrieved.
+   *
+   * @param vertx         the Vert.x instance
+   * @param epochCounter  the {@value #EPOCH_COUNTER_NAME} counter
+   * @param numTeams      the number of teams, numbered from 1
+   * @param flushInterval the period in ms between two flushes
+   * @return the accumulator
+   */
+  public static PopAccumulator share(Vertx vertx, Counter epochCounter, int numTeams, long flushInterval) {
+    LocalMap<String, PopAccumulator> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+    PopAccumulator accumulator = new PopAccumulator(vertx, epochCounter, numTeams);
+    PopAccumulator existing = map.putIfAbsent(LOCAL_MAP_KEY, accumulator);
+    if (existing != null) {
+      return existing;
+    }
+    vertx.setPeriodic(flushInterval, l -> accumulator.flush());
+    vertx.eventBus().<Long>consumer(RESET_ADDRESS, message -> accumulator.enter(message.body()));
+    accumulator.enterCurrent();
+    return accumulator;
+  }
+
+  /**
+   * @param epoch the epoch
+   * @return the prefix of the pop counters of the epoch, the counter of team {@code N} is {@code prefix.N}
+   */
+  public static String counterPrefix(long epoch) {
+    // The counters of the even epochs keep the names they had before the epochs
+    return epoch % 2 == 0 ? COUNTER_PREFIX : COUNTER_PREFIX + ".1";
+  }
+
+  /**
+   * Counts a pop, can be called from any thread.
+   *
+   * @param team the team number
+   */
+  public void pop(int team) {
+    pop(team, 1);
+  }
+
+  /**
+   * Counts pops, can be called from any thread.
+   *
+   * @param team  the team number
+   * @param count the number of pops
+   */
+  public void pop(int team, int count) {
+    if (team > 0 && team < pops.length && pops[team] != null) {
+      pops[team].add(count);
+    }
+  }
+
+  /**
+   * Starts a new epoch in the cluster, the pop counters of every node restart from 0.
+   *
+   * @param handler the handler receiving the new epoch once published
+   */
+  public void reset(Handler<AsyncResult<Long>> handler) {
+    epochCounter.incrementAndGet(ar -> {
+      if (ar.failed()) {
+        handler.handle(ar);
+        return;
+      }
+      long newEpoch = ar.result();
+      clearCounters(newEpoch, cleared -> {
+        if (cleared.succeeded()) {
+          vertx.eventBus().publish(RESET_ADDRESS, newEpoch);
+          handler.handle(Future.succeededFuture(newEpoch));
+        } else {
+          handler.handle(Future.failedFuture(cleared.cause()));
+        }
+      });
+    });
+  }
+
+  /**
+   * Sends the pops counted since the last flush to the counters of the current epoch.
+   */
+  public synchronized void flush() {
+    if (counters == null) {
+      // Sent once the counters are retrieved
+      return;
+    }
+    for (int team = 0; team < pops.length; team++) {
+      if (pops[team] == null) {
+        continue;
+      }
+      // sum() does not lose concurrent increments, unlike sumThenReset()
+      long total = pops[team].sum();
+      long delta = total - flushed[team];
+      if (delta != 0) {
+        flushed[team] = total;
+        int index = team;
+        long flushEpoch = epoch;
+        counters[team].addAndGet(delta, ar -> {
+          if (ar.failed()) {
+            // Sent again with the next flush
+            restore(index, delta, flushEpoch);
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * @param team the team number
+   * @return the pops of the team not flushed yet
+   */
+  public synchronized long pending(int team) {
+    return pops[team].sum() - flushed[team];
+  }
+
+  /**
+   * @return the current epoch, -1 until retrieved
+   */
+  public synchronized long epoch() {
+    return epoch;
+  }
+
+  /**
+   * @return whether the counters of the current epoch have been retrieved
+   */
+  public synchronized boolean ready() {
+    return counters != null;
+  }
+
+  /**
+   * Enters an epoch, the pops not flushed yet are discarded unless this is the first epoch of this node.
+   *
+   * @param newEpoch the epoch
+   */
+  void enter(long newEpoch) {
+    synchronized (this) {
+      if (newEpoch <= epoch) {
+        return;
+      }
+      if (epoch >= 0) {
+        for (int team = 0; team < pops.length; team++) {
+          if (pops[team] != null) {
+            flushed[team] = pops[team].sum();
+          }
+        }
+      }
+      epoch = newEpoch;
+      counters = null;
+    }
+    retrieveCounters(newEpoch);
+  }
+
+  private void enterCurrent() {
+    epochCounter.get(ar -> {
+      if (ar.succeeded()) {
+        enter(ar.result());
+      } else {
+        LOGGER.error("Unable to read the pop epoch", ar.cause());
+        vertx.setTimer(RETRY, l -> enterCurrent());
+      }
+    });
+  }
+
+  private void retrieveCounters(long counterEpoch) {
+    Counter[] retrieved = new Counter[pops.length];
+    List<Future> futures = new ArrayList<>();
+    for (int team = 0; team < pops.length; team++) {
+      if (pops[team] != null) {
+        Future future = Future.future();
+        futures.add(future);
+        int index = team;
+        vertx.sharedData().getCounter(counterPrefix(counterEpoch) + "." + team, ar -> {
+          if (ar.succeeded()) {
+            retrieved[index] = ar.result();
+            future.complete();
+          } else {
+            future.fail(ar.cause());
+          }
+        });
+      }
+    }
+    CompositeFuture.all(futures).setHandler(ar -> {
+      if (ar.failed()) {
+        LOGGER.error("Unable to retrieve the pop counters of epoch " + counterEpoch, ar.cause());
+        vertx.setTimer(RETRY, l -> retrieveCounters(counterEpoch));
+        return;
+      }
+      synchronized (this) {
+        if (epoch == counterEpoch) {
+          counters = retrieved;
+        }
+      }
+    });
+  }
+
+  // The counters still hold the pops of two epochs ago, no node flushes to them anymore
+  private void clearCounters(long counterEpoch, Handler<AsyncResult<Void>> handler) {
+    List<Future> futures = new ArrayList<>();
+    for (int team = 0; team < pops.length; team++) {
+      if (pops[team] != null) {
+        Future<Void> future = Future.future();
+        futures.add(future);
+        vertx.sharedData().getCounter(counterPrefix(counterEpoch) + "." + team, ar -> {
+          if (ar.succeeded()) {
+            clear(ar.result(), future.completer());
+          } else {
+            future.fail(ar.cause());
+          }
+        });
+      }
+    }
+    CompositeFuture.all(futures).setHandler(ar -> handler.handle(
+        ar.succeeded() ? Future.succeededFuture() : Future.failedFuture(ar.cause())));
+  }
+
+  private static void clear(Counter counter, Handler<AsyncResult<Void>> handler) {
+    counter.get(ar -> {
+      if (ar.failed()) {
+        handler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      counter.compareAndSet(ar.result(), 0, set -> {
+        if (set.failed()) {
+          handler.handle(Future.failedFuture(set.cause()));
+        } else if (set.result()) {
+          handler.handle(Future.succeededFuture());
+        } else {
+          // A late flush meanwhile
+          clear(counter, handler);
+        }
+      });
+    });
+  }
+
+  private synchronized void restore(int team, long delta, long flushEpoch) {
+    if (flushEpoch == epoch) {
+      flushed[team] -= delta;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the score frames of a connection.
+ * <p>
+ * The bucket holds up to {@code burst} tokens and gets {@code rate} tokens per second, a frame is forwarded as is if a
+ * token is available. The frames above the rate are merged like the game verticle aggregates the scores (highest
+ * score, highest consecutive pops, golden snitch popped by any frame) and the number of merged frames, one balloon
+ * pop each, is kept: the merged score is forwarded once a token is available again, with a {@code pops} field.
+ * Nothing is lost, the game verticle only sees fewer messages. Not thread safe, used from the context of the socket.
+ */
+public class ScoreThrottle {
+
+  private final Vertx vertx;
+  private final Handler<Object> forward;
+  private final double nanosPerToken;
+  private final double burst;
+
+  private double tokens;
+  private long refilled;
+  // Frames waiting for a token, merged
+  private Object pendingFrame;
+  private int pendingPops;
+  private int pendingScore;
+  private int pendingConsecutive;
+  private boolean pendingGoldenSnitchPopped;
+  private long timer = -1;
+
+  /**
+   * @param vertx   the Vert.x instance
+   * @param rate    the number of score frames forwarded per second
+   * @param burst   the number of score frames forwarded at once before being limited to the rate
+   * @param forward the handler forwarding the score frames
+   */
+  public ScoreThrottle(Vertx vertx, double rate, int burst, Handler<Object> forward) {
+    this.vertx = vertx;
+    this.forward = forward;
+    this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / rate;
+    this.burst = burst;
+    this.tokens = burst;
+    this.refilled = System.nanoTime();
+  }
+
+  /**
+   * @param frame              the score frame, forwarded as is if within the rate
+   * @param score              the score of the frame
+   * @param consecutive        the consecutive pops of the frame
+   * @param goldenSnitchPopped whether the golden snitch was popped
+   */
+  public void offer(Object frame, int score, int consecutive, boolean goldenSnitchPopped) {
+    if (pendingPops == 0 && take()) {
+      forward.handle(frame);
+      return;
+    }
+    if (pendingPops == 0) {
+      pendingFrame = frame;
+      pendingScore = score;
+      pendingConsecutive = consecutive;
+      pendingGoldenSnitchPopped = goldenSnitchPopped;
+    } else {
+      GameMetrics.FRAMES_IN_COALESCED.mark();
+      pendingFrame = null;
+      pendingScore = Math.max(pendingScore, score);
+      pendingConsecutive = Math.max(pendingConsecutive, consecutive);
+      pendingGoldenSnitchPopped |= goldenSnitchPopped;
+    }
+    pendingPops++;
+    schedule();
+  }
+
+  /**
+   * Drops the pending frames, when the connection is closed.
+   */
+  public void close() {
+    if (timer != -1) {
+      vertx.cancelTimer(timer);
+      timer = -1;
+    }
+    pendingFrame = null;
+    pendingPops = 0;
+  }
+
+  /**
+   * @return the message forwarding the merged frames, in the format of the text frames
+   */
+  static JsonObject merged(int score, int consecutive, boolean goldenSnitchPopped, int pops) {
+    return new JsonObject().put("event", "message").put("message", new JsonObject()
+        .put("type", "score")
+        .put("score", score)
+        .put("consecutive", consecutive)
+        .put("goldenSnitchPopped", goldenSnitchPopped)
+        .put("pops", pops));
+  }
+
+  private void schedule() {
+    if (timer == -1) {
+      long delay = TimeUnit.NANOSECONDS.toMillis((long) ((1 - tokens) * nanosPerToken));
+      timer = vertx.setTimer(Math.max(1, delay), l -> {
+        timer = -1;
+        if (pendingPops > 0 && take()) {
+          Object message = pendingPops == 1 ? pendingFrame
+              : merged(pendingScore, pendingConsecutive, pendingGoldenSnitchPopped, pendingPops);
+          pendingFrame = null;
+          pendingPops = 0;
+          forward.handle(message);
+        } else if (pendingPops > 0) {
+          schedule();
+        }
+      });
+    }
+  }
+
+  private boolean take() {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - refilled) / nanosPerToken);
+    refilled = now;
+    if (tokens >= 1) {
+      tokens--;
+      return true;
+    }
+    return false;
+  }
+}
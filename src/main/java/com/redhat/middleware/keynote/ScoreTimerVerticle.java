@@ -2,9 +2,12 @@ package com.redhat.middleware.keynote;
 
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -13,39 +16,42 @@ import com.redhat.middleware.keynote.GameUtils.Endpoint;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.TimeoutStream;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.shareddata.Counter;
+import io.vertx.core.shareddata.Lock;
 
 public class ScoreTimerVerticle extends AbstractVerticle {
   private final static Logger LOGGER = Logger.getLogger(ScoreTimerVerticle.class.getName());
+  private static final int MAX_SCORE_CLIENT_FAILURES = 3;
+  static final String LEADER_LOCK = "redhat.scoretimer.leader";
+  // Time in ms an attempt waits for the leader lock, kept short as a worker thread waits meanwhile
+  private static final long LEADER_ATTEMPT_TIMEOUT = 10L;
   
 
-  private static final String SUMMARY_REQUEST_PREFIX = "{" +
-      "\"lookup\"   : \"SummarySession\"," +
-      "\"commands\" : [" +
-      "  { \"insert\" : {" +
-      "       \"object\" : {\"com.redhatkeynote.score.ScoreSummary\":{" +
-      "         \"topPlayers\"     : ";
-  private static final String SUMMARY_REQUEST_SUFFIX = "       }}," +
-      "       \"out-identifier\" : \"scoreSummary\"," +
-      "       \"return-object\" : true" +
-      "    }" +
-      "  }," +
-      "  {" +
-      "      \"fire-all-rules\" : {}" +
-      "  } ]" +
-      "}";
-
   private Map<Integer, Counter> teamCounters = new ConcurrentHashMap<>();
   private Map<Integer, Counter> teamPopCounters = new ConcurrentHashMap<>();
+  // Epoch of the pop counters, see PopAccumulator
+  private long popEpoch = -1;
+  private final AchievementCache achievementCache = new AchievementCache();
   private Endpoint achievementEndpoint ;
   private HttpClient achievementClient;
   private HttpClientOptions scoreClientOptions;
+  private HttpClient scoreClient;
+  private int scoreClientFailures;
+  private boolean achievementBulk;
+  private long achievementDeadline;
+  private Lock leaderLock;
+  private long leaderTimer = -1;
+  private boolean stopped;
+  // Last team-score sent to the players, by team
+  private final Map<Integer, Integer> teamScoreBroadcasts = new HashMap<>();
 
   @Override
   public void start(Future<Void> future) throws Exception {
@@ -54,14 +60,20 @@ public class ScoreTimerVerticle extends AbstractVerticle {
     final int numTopPlayers = config().getInteger("numTopPlayers", 10);
     final int testPort = config().getInteger("innerPort", 9002);
     final int numTeams = config().getInteger("number-of-teams", 4);
+    achievementBulk = config().getBoolean("achievement-bulk", false);
+    achievementDeadline = config().getLong("achievement-deadline", 250L);
+    final long leaderRetry = config().getLong("leader-retry", 1000L);
+    Broadcast.registerCodec(vertx);
+    // Same payload on every tick
+    final Buffer scoreRequestPayload = KieCommandWriter.scoreSummary(numTopPlayers);
 
     // BURR
-    String achievementPortEnv = System.getenv("ACHIEVEMENTS_SERVER_PORT").trim();
-    String scorePortEnv = System.getenv("SCORE_SERVER_PORT").trim();
-
-    achievementEndpoint = GameUtils.retrieveEndpoint("ACHIEVEMENTS_SERVER", Integer.parseInt(achievementPortEnv), "/api");
+    // Without the port variables, the internal stand-ins are used
+    achievementEndpoint = GameUtils.retrieveServiceEndpoint("ACHIEVEMENTS_SERVER", "/api", testPort,
+        "/testAchievementServer");
     LOGGER.finest("! achievementEndpoint: " + achievementEndpoint);
-    final Endpoint scoreEndpoint = GameUtils.retrieveEndpoint("SCORE_SERVER", Integer.parseInt(scorePortEnv), "/kie-server/services/rest/server/containers/instances/score");
+    final Endpoint scoreEndpoint = GameUtils.retrieveServiceEndpoint("SCORE_SERVER",
+        "/kie-server/services/rest/server/containers/instances/score", testPort, "/testScoreServer");
     LOGGER.finest("! scoreEndpoint: " + scoreEndpoint);
     String scoreUser = System.getenv("SCORE_USER");
     String scorePassword = System.getenv("SCORE_PASSWORD");
@@ -76,95 +88,42 @@ public class ScoreTimerVerticle extends AbstractVerticle {
     }
 
     LOGGER.finest("! scoreAuthHeader: " + scoreAuthHeader);   
-    // Should only need 1
-    scoreClientOptions = new HttpClientOptions().setMaxPoolSize(20);
+    // A single long-lived connection, kept alive between the ticks
+    scoreClientOptions = new HttpClientOptions()
+        .setKeepAlive(true)
+        .setPipelining(true)
+        .setMaxPoolSize(1);
+    scoreClient = vertx.createHttpClient(scoreClientOptions);
 
     // Should only need 1
     final HttpClientOptions achievementClientOptions = new HttpClientOptions().setMaxPoolSize(20);
     achievementClient = vertx.createHttpClient(achievementClientOptions);
 
+    // Achievements are only fetched again once a game verticle has updated them
+    vertx.eventBus().<String>consumer(AchievementCache.INVALIDATION_ADDRESS,
+        message -> achievementCache.invalidate(message.body()));
+
+    // The pop counters of a new epoch replace the previous ones
+    vertx.eventBus().<Long>consumer(PopAccumulator.RESET_ADDRESS,
+        message -> getTeamPopCounters(message.body(), numTeams));
+
     List<Future> futures = new ArrayList<>();
     futures.addAll(getTeamCounters("redhat.team", teamCounters, numTeams));
-    futures.addAll(getTeamCounters("redhat.team.pop", teamPopCounters, numTeams));
+    futures.add(getTeamPopCounters(numTeams));
 
     CompositeFuture.all(futures).setHandler(ar -> {
       if (ar.succeeded()) {
-        final TimeoutStream periodicStream = vertx.periodicStream(interval);
-        periodicStream.handler(time -> {
-          periodicStream.pause();
-          HttpClient scoreClient = vertx.createHttpClient(scoreClientOptions);
-          LOGGER.finest("! scoreEndpoint.getPort " + scoreEndpoint.getPort());
-          LOGGER.finest("! scoreEndpoint.getHost " + scoreEndpoint.getHost());
-          LOGGER.finest("! scoreEndpoint.getPath " + scoreEndpoint.getPath());
-          
-          // Poll the score server to grab team scores and top N players
-          // the payload of the POST request is way down by scoreRequestString
-          final HttpClientRequest scoreRequest = scoreClient.post(scoreEndpoint.getPort(), scoreEndpoint.getHost(), scoreEndpoint.getPath(), resp -> {
-            resp.exceptionHandler(t -> {
-              LOGGER.info("! resp.exceptionHandler ");
-              t.printStackTrace();
-              scoreClient.close();
+        // Only the leader of the cluster polls the score server, the others wait for the leader lock
+        acquireLeadership(leaderRetry, () -> {
+          final TimeoutStream periodicStream = vertx.periodicStream(interval);
+          periodicStream.handler(time -> {
+            periodicStream.pause();
+            final long cycleStart = System.nanoTime();
+            pollScores(scoreEndpoint, scoreAuthHeader, scoreRequestPayload, numTeams, () -> {
+              GameMetrics.stop(GameMetrics.SCORE_TIMER_CYCLE, cycleStart);
               periodicStream.resume();
             });
-            
-            LOGGER.finest("! resp.statusCode(): " + resp.statusCode());
-
-            if (resp.statusCode() == 200) {
-              resp.bodyHandler(body -> {
-                List<Future> sendFutures = new ArrayList<>();
-                final JsonObject response = body.toJsonObject();
-                if ((response != null) && "SUCCESS".equals(response.getString("type"))) {
-                  final JsonObject scoreSummaryResult = findScoreSummary(response);
-
-                  final JsonObject teamScoreSummary = walkTree(scoreSummaryResult, "com.redhatkeynote.score.ScoreSummary");
-                  if (teamScoreSummary != null) {
-                    final JsonArray teamScores = teamScoreSummary.getJsonArray("teamScores");
-                    sendFutures.add(sendTeamScores(teamScores, numTeams));
-
-                    final JsonArray topPlayerScores = teamScoreSummary.getJsonArray("topPlayerScores");
-                    sendFutures.add(sendTopPlayerScores(topPlayerScores));
-                  }
-                }
-                if (sendFutures.size() > 0) {
-                  CompositeFuture.all(sendFutures).setHandler(result -> {
-                    scoreClient.close();
-                    periodicStream.resume();
-                  });
-                } else {
-                  scoreClient.close();
-                  periodicStream.resume();
-                }
-              });
-            } else { // not 200
-              LOGGER.finest("! not 200 bodyHandler START");
-              resp.bodyHandler(body -> {
-                LOGGER.finest("! body Class: " + body.getClass().getName());
-                LOGGER.finest("! body: " + body);
-                // JsonObject bodyAsJsonObject = body.toJsonObject();
-                // String content = new JsonObject(body).encode();                
-              });
-              LOGGER.finest("! not 200 bodyHandler END");
-              scoreClient.close();
-              
-              LOGGER.finest("! Received error response from Score endpoint: " + resp.statusMessage());
-              periodicStream.resume();
-            }
-          })
-              .putHeader("Accept", "application/json")
-              .putHeader("Authorization", scoreAuthHeader)
-              .putHeader("Content-Type", "application/json")
-              .setTimeout(3000)
-              .exceptionHandler(t -> {
-                t.printStackTrace();
-                scoreClient.close();
-                periodicStream.resume();
-              });
-          
-          String scoreRequestString = SUMMARY_REQUEST_PREFIX + numTopPlayers + SUMMARY_REQUEST_SUFFIX;
-          LOGGER.finest("! scoreRequestString: " + scoreRequestString);
-          
-          scoreRequest.end(scoreRequestString);
-
+          });
         });
         future.complete();
       } else { // if (ar.succeeded())
@@ -174,34 +133,130 @@ public class ScoreTimerVerticle extends AbstractVerticle {
     }); // CompositeFuture.all(futures).setHandler(ar -> {
   } // start
 
-  private JsonObject findScoreSummary(JsonObject response) {
-    final JsonObject executionResults = walkTree(response, "result", "execution-results");
-    if (executionResults != null) {
-      final JsonArray results = executionResults.getJsonArray("results");
-      if (results != null) {
-        for (int index = 0 ; index < results.size(); index++) {
-          final JsonObject result = results.getJsonObject(index);
-          if ("scoreSummary".equals(result.getString("key"))) {
-            return result.getJsonObject("value");
-          }
+  @Override
+  public void stop() throws Exception {
+    stopped = true;
+    if (leaderTimer != -1) {
+      vertx.cancelTimer(leaderTimer);
+      leaderTimer = -1;
+    }
+    // Hands the leadership over to another node
+    if (leaderLock != null) {
+      leaderLock.release();
+      leaderLock = null;
+    }
+  }
+
+  /**
+   * Tries to get the cluster-wide leader lock every {@code retry} ms, then calls {@code onLeader}. The lock is held
+   * until the verticle is undeployed, or released by the cluster when the node leaves (or is considered dead). Once
+   * the verticle is stopped there are no more attempts, and a lock obtained meanwhile is released right away.
+   *
+   * @param retry the time in ms between two attempts
+   */
+  private void acquireLeadership(long retry, Runnable onLeader) {
+    vertx.sharedData().getLockWithTimeout(LEADER_LOCK, LEADER_ATTEMPT_TIMEOUT, ar -> {
+      if (stopped) {
+        if (ar.succeeded()) {
+          ar.result().release();
         }
+      } else if (ar.succeeded()) {
+        leaderLock = ar.result();
+        LOGGER.info("! Score timer leader, polling the score server");
+        onLeader.run();
+      } else {
+        LOGGER.finest("! Not the score timer leader: " + ar.cause().getMessage());
+        leaderTimer = vertx.setTimer(retry, l -> {
+          leaderTimer = -1;
+          acquireLeadership(retry, onLeader);
+        });
       }
-    }
-    return null;
+    });
   }
 
-  private static JsonObject walkTree(JsonObject tree, String ... paths) {
-    if (paths != null) {
-      for(String path: paths) {
-        tree = tree.getJsonObject(path);
+  /**
+   * Polls the score server to grab team scores and top N players, then publishes them.
+   *
+   * @param endCycle called once when the tick is over
+   */
+  private void pollScores(Endpoint scoreEndpoint, String scoreAuthHeader, Buffer scoreRequestPayload, int numTeams,
+                          Runnable endCycle) {
+    final long pollStart = System.nanoTime();
+    final AtomicBoolean done = new AtomicBoolean();
+    final Runnable end = () -> {
+      if (done.compareAndSet(false, true)) {
+        endCycle.run();
+      }
+    };
+    final Handler<Throwable> failure = t -> {
+      t.printStackTrace();
+      if (!done.get()) {
+        scoreClientFailed();
+      }
+      end.run();
+    };
+    LOGGER.finest("! scoreEndpoint " + scoreEndpoint);
+
+    final HttpClientRequest scoreRequest = scoreClient.post(scoreEndpoint.getPort(), scoreEndpoint.getHost(), scoreEndpoint.getPath(), resp -> {
+      resp.exceptionHandler(failure);
+
+      LOGGER.finest("! resp.statusCode(): " + resp.statusCode());
+
+      if (resp.statusCode() == 200) {
+        resp.bodyHandler(body -> {
+          GameMetrics.stop(GameMetrics.SCORE_POLL, pollStart);
+          scoreClientFailures = 0;
+          List<Future> sendFutures = new ArrayList<>();
+          // Only the score summary is decoded, facts and wrappers are skipped
+          final JsonObject teamScoreSummary = KieResponseParser.extractResult(body, "scoreSummary");
+          if (teamScoreSummary != null) {
+            final JsonArray teamScores = teamScoreSummary.getJsonArray("teamScores");
+            sendFutures.add(sendTeamScores(teamScores, numTeams));
+
+            final JsonArray topPlayerScores = teamScoreSummary.getJsonArray("topPlayerScores");
+            sendFutures.add(sendTopPlayerScores(topPlayerScores));
+          }
+          if (sendFutures.size() > 0) {
+            CompositeFuture.all(sendFutures).setHandler(result -> end.run());
+          } else {
+            end.run();
+          }
+        });
+      } else { // not 200
+        // The body is read so the connection can be reused
+        resp.bodyHandler(body -> LOGGER.finest("! body: " + body));
+        LOGGER.finest("! Received error response from Score endpoint: " + resp.statusMessage());
+        end.run();
       }
-      return tree;
+    })
+        .putHeader("Accept", "application/json")
+        .putHeader("Content-Type", "application/json")
+        .setTimeout(3000)
+        .exceptionHandler(failure);
+    if (scoreAuthHeader != null) {
+      scoreRequest.putHeader("Authorization", scoreAuthHeader);
     }
-    return null;
+
+    scoreRequest.end(scoreRequestPayload);
   }
 
-  private Future sendTeamScores(JsonArray teamScores, final int numTeams) {
-    final List<Future> futures = new ArrayList<>();
+  /**
+   * Connection health check: after a few consecutive failures (timeouts, resets) the kept-alive connection is
+   * considered broken, a new client is created so the next tick opens a fresh connection.
+   */
+  private void scoreClientFailed() {
+    if (++scoreClientFailures >= MAX_SCORE_CLIENT_FAILURES) {
+      LOGGER.info("! " + scoreClientFailures + " consecutive score server failures, reconnecting");
+      scoreClient.close();
+      scoreClient = vertx.createHttpClient(scoreClientOptions);
+      scoreClientFailures = 0;
+    }
+  }
+
+  /**
+   * Orders the team scores by team number, teams missing from the summary get an empty score.
+   */
+  static List<JsonObject> orderTeamScores(JsonArray teamScores, final int numTeams) {
     final int teamCount = teamScores.size();
     final List<JsonObject> orderedTeamScores = new ArrayList<>();
     for(int index = 0 ; index < numTeams ; index++) {
@@ -218,10 +273,30 @@ public class ScoreTimerVerticle extends AbstractVerticle {
       final Integer team = teamScore.getInteger("team");
       orderedTeamScores.set(team-1, teamScore);
     }
+    return orderedTeamScores;
+  }
+
+  /**
+   * Sends the team score to the players of the team when it changed, a single publish on the team topic.
+   */
+  private void broadcastTeamScore(int team, int score) {
+    Integer previous = teamScoreBroadcasts.put(team, score);
+    if (previous == null || previous != score) {
+      Map<String, Object> message = new HashMap<>();
+      message.put("type", "team-score");
+      message.put("score", score);
+      vertx.eventBus().publish(Broadcast.teamAddress(team), Broadcast.of(message));
+    }
+  }
+
+  private Future sendTeamScores(JsonArray teamScores, final int numTeams) {
+    final List<Future> futures = new ArrayList<>();
+    final List<JsonObject> orderedTeamScores = orderTeamScores(teamScores, numTeams);
 
     for(int index = 0 ; index < numTeams ; index++) {
       JsonObject teamScore = orderedTeamScores.get(index);
       final Integer team = teamScore.getInteger("team");
+      broadcastTeamScore(team, teamScore.getInteger("score", 0));
       Counter teamCounter = teamCounters.get(team);
       if (teamCounter != null) {
         Future teamCounterFuture = Future.future();
@@ -266,70 +341,221 @@ public class ScoreTimerVerticle extends AbstractVerticle {
 
   // gathers the achievements for the top N players
   private Future sendTopPlayerScores(JsonArray topPlayerScores) {
-    final List<Future> futures = new ArrayList<>();
     final int playerCount = topPlayerScores.size();
+    final List<String> uuids = new ArrayList<>(playerCount);
+    // Players whose achievements are not cached, by uuid
+    final Map<String, JsonObject> missing = new LinkedHashMap<>();
     for(int index = 0 ; index < playerCount ; index++) {
       JsonObject playerScore = topPlayerScores.getJsonObject(index);
       final String uuid = playerScore.getString("uuid");
-      LOGGER.finest("! fetching achievements for " + uuid);
-      final Future future = Future.future();
-      futures.add(future);
+      uuids.add(uuid);
+      final JsonObject cached = achievementCache.get(uuid);
+      if (cached != null) {
+        // Unchanged since the last fetch
+        playerScore.put("achievements", cached);
+      } else if (!achievementCache.isFetching(uuid)) {
+        missing.put(uuid, playerScore);
+      }
+      // else still being fetched by a previous tick, published without achievements until the fetch completes
+    }
+    achievementCache.retain(uuids);
+
+    final Future future = Future.future();
+    final AtomicBoolean published = new AtomicBoolean();
+    final Runnable publish = () -> {
+      // Late achievements are only cached, the published scores must not be modified
+      if (published.compareAndSet(false, true)) {
+        vertx.eventBus().publish("/leaders", topPlayerScores);
+        future.complete();
+      }
+    };
+    if (missing.isEmpty()) {
+      publish.run();
+      return future;
+    }
+
+    final List<Future> futures = new ArrayList<>();
+    if (achievementBulk) {
+      futures.add(fetchAchievements(missing, published));
+    } else {
+      missing.forEach((uuid, playerScore) -> futures.add(fetchAchievements(uuid, playerScore, published)));
+    }
+    // Publish with the achievements received so far if some players are slow
+    final long deadline = vertx.setTimer(achievementDeadline, l -> {
+      LOGGER.fine("! achievement deadline reached, publishing partial leaderboard");
+      publish.run();
+    });
+    CompositeFuture.all(futures).setHandler(ar -> {
+      vertx.cancelTimer(deadline);
+      publish.run();
+    });
+    return future;
+  }
+
+  /**
+   * Fetches the achievements of a single player, maps to {@code GET /api/achievement/:uuid}.
+   */
+  private Future fetchAchievements(String uuid, JsonObject playerScore, AtomicBoolean published) {
+    LOGGER.finest("! fetching achievements for " + uuid);
+    final Object fetch = achievementCache.fetch(uuid);
+    final Future future = Future.future();
+    // The player is fetched again on the next tick if no achievements were received
+    final Runnable done = () -> {
+      achievementCache.abort(uuid, fetch);
+      future.complete();
+    };
 
-      String path = achievementEndpoint.getPath() + "/achievement/" + uuid;
-      LOGGER.fine("! achievementEndpoint " + achievementEndpoint);
-      LOGGER.finest("! sendTopPlayerScores achievementClient.get Host: " + achievementEndpoint.getHost()); 
-      LOGGER.finest("! sendTopPlayerScores achievementClient.get Port: " + achievementEndpoint.getPort());
-      LOGGER.finest("! sendTopPlayerScores achievementClient.get Path: " + path);
-      // maps to /api/achievement/:uuid
-      final HttpClientRequest scoreRequest = achievementClient.get(achievementEndpoint.getPort(), achievementEndpoint.getHost(), path, resp -> {
-        resp.exceptionHandler(t -> {
+    String path = achievementEndpoint.getPath() + "/achievement/" + uuid;
+    LOGGER.fine("! achievementEndpoint " + achievementEndpoint);
+    LOGGER.finest("! sendTopPlayerScores achievementClient.get Host: " + achievementEndpoint.getHost());
+    LOGGER.finest("! sendTopPlayerScores achievementClient.get Port: " + achievementEndpoint.getPort());
+    LOGGER.finest("! sendTopPlayerScores achievementClient.get Path: " + path);
+    final HttpClientRequest request = achievementClient.get(achievementEndpoint.getPort(), achievementEndpoint.getHost(), path, resp -> {
+      resp.exceptionHandler(t -> {
+        t.printStackTrace();
+        done.run();
+      });
+      if (resp.statusCode() == 200) {
+        resp.bodyHandler(body -> {
+          final JsonArray achievementResponse = body.toJsonArray();
+          LOGGER.fine("Player " + uuid + " has " + achievementResponse.size() + " achievements: " + achievementResponse);
+          applyAchievements(uuid, fetch, playerScore, achievementResponse, published);
+          done.run();
+        });
+      } else {
+        LOGGER.info("ScoreTimerVerticle.java: Received error response from Achievement endpoint: " + resp.statusMessage());
+        done.run();
+      }
+    })
+        .putHeader("Accept", "application/json")
+        .putHeader("Content-Type", "application/json")
+        .setTimeout(10000)
+        .exceptionHandler(t -> {
+          LOGGER.severe("! Exception " + t);
           t.printStackTrace();
-          future.complete();
+          done.run();
         });
-        if (resp.statusCode() == 200) {
-          
-          resp.bodyHandler(body -> {
-            final JsonArray achievementResponse = body.toJsonArray();
-            int size = achievementResponse.size();
-            final JsonObject achievements = new JsonObject();
-            LOGGER.info("Player " + uuid + " has " + size + " achievements: " + achievementResponse);
-            
-            for(int count = 0 ; count < size; count++) {
-              final JsonObject achievement = achievementResponse.getJsonObject(count);
-              LOGGER.info(count + " Achievement: " + achievement);
-              Boolean achieved = achievement.getBoolean("achieved");
-              String achievementType = achievement.getString("achievementType");
-              if (achieved.booleanValue() == true) {
-                LOGGER.info(" AchievementType: " + achievementType + " is true");
-                achievements.put(achievementType, true);
-              }
-               
-            } // for
-            LOGGER.info("BURR achievements: " + achievements);
-            playerScore.put("achievements", achievements);
-            future.complete();
+    request.end();
+    return future;
+  }
+
+  /**
+   * Fetches the achievements of several players in a single request, maps to {@code POST /api/achievement/bulk}
+   * with the array of uuids as body. The response maps each uuid to its achievements, players missing from the
+   * response are fetched again on the next tick.
+   */
+  private Future fetchAchievements(Map<String, JsonObject> playerScores, AtomicBoolean published) {
+    LOGGER.finest("! fetching achievements for " + playerScores.keySet());
+    final Map<String, Object> fetches = new HashMap<>();
+    for (String uuid : playerScores.keySet()) {
+      fetches.put(uuid, achievementCache.fetch(uuid));
+    }
+    final Future future = Future.future();
+    // The players missing from the response are fetched again on the next tick
+    final Runnable done = () -> {
+      fetches.forEach(achievementCache::abort);
+      future.complete();
+    };
+
+    String path = achievementEndpoint.getPath() + "/achievement/bulk";
+    final HttpClientRequest request = achievementClient.post(achievementEndpoint.getPort(), achievementEndpoint.getHost(), path, resp -> {
+      resp.exceptionHandler(t -> {
+        t.printStackTrace();
+        done.run();
+      });
+      if (resp.statusCode() == 200) {
+        resp.bodyHandler(body -> {
+          final JsonObject response = body.toJsonObject();
+          playerScores.forEach((uuid, playerScore) -> {
+            final JsonArray achievementResponse = response.getJsonArray(uuid);
+            if (achievementResponse != null) {
+              applyAchievements(uuid, fetches.get(uuid), playerScore, achievementResponse, published);
+            }
           });
+          done.run();
+        });
+      } else {
+        LOGGER.info("ScoreTimerVerticle.java: Received error response from Achievement bulk endpoint: " + resp.statusMessage());
+        done.run();
+      }
+    })
+        .putHeader("Accept", "application/json")
+        .putHeader("Content-Type", "application/json")
+        .setTimeout(10000)
+        .exceptionHandler(t -> {
+          LOGGER.severe("! Exception " + t);
+          t.printStackTrace();
+          done.run();
+        });
+    request.end(new JsonArray(new ArrayList<>(playerScores.keySet())).encode());
+    return future;
+  }
+
+  private void applyAchievements(String uuid, Object fetch, JsonObject playerScore, JsonArray achievementResponse,
+                                 AtomicBoolean published) {
+    final JsonObject achievements = toAchievements(achievementResponse);
+    achievementCache.complete(uuid, fetch, achievements);
+    if (!published.get()) {
+      playerScore.put("achievements", achievements);
+    }
+  }
+
+  /**
+   * @return the achieved achievement types, as {@code { "type" : true }}
+   */
+  static JsonObject toAchievements(JsonArray achievementResponse) {
+    final JsonObject achievements = new JsonObject();
+    int size = achievementResponse.size();
+    for(int count = 0 ; count < size; count++) {
+      final JsonObject achievement = achievementResponse.getJsonObject(count);
+      LOGGER.finest(count + " Achievement: " + achievement);
+      if (achievement.getBoolean("achieved", false)) {
+        String achievementType = achievement.getString("achievementType");
+        LOGGER.finest(" AchievementType: " + achievementType + " is true");
+        achievements.put(achievementType, true);
+      }
+    }
+    return achievements;
+  }
+
+  /**
+   * Retrieves the pop counters of the current epoch.
+   */
+  private Future getTeamPopCounters(final int numTeams) {
+    final Future future = Future.future();
+    vertx.sharedData().getCounter(PopAccumulator.EPOCH_COUNTER_NAME, ar -> {
+      if (ar.failed()) {
+        future.fail(ar.cause());
+        return;
+      }
+      ar.result().get(epoch -> {
+        if (epoch.failed()) {
+          future.fail(epoch.cause());
         } else {
-          LOGGER.info("ScoreTimerVerticle.java: Received error response from Achievement endpoint: " + resp.statusMessage());
-          future.complete();
+          getTeamPopCounters(epoch.result(), numTeams).setHandler(future.completer());
         }
-      })
-          .putHeader("Accept", "application/json")
-          .putHeader("Content-Type", "application/json")
-          .setTimeout(10000)
-          .exceptionHandler(t -> {
-            LOGGER.severe("! Exception " + t);
-            t.printStackTrace();
-            future.complete();
-          });
-      scoreRequest.end();
+      });
+    });
+    return future;
+  }
+
+  private Future getTeamPopCounters(final long epoch, final int numTeams) {
+    if (epoch <= popEpoch) {
+      return Future.succeededFuture();
     }
-    Future future = Future.future();
-    CompositeFuture.all(futures).setHandler( ar -> {
+    popEpoch = epoch;
+    final Map<Integer, Counter> counters = new HashMap<>();
+    final Future future = Future.future();
+    CompositeFuture.all(getTeamCounters(PopAccumulator.counterPrefix(epoch), counters, numTeams)).setHandler(ar -> {
       if (ar.succeeded()) {
-        vertx.eventBus().publish("/leaders", topPlayerScores);
+        // Unless a later epoch has started meanwhile
+        if (epoch == popEpoch) {
+          teamPopCounters.putAll(counters);
+        }
+        future.complete();
+      } else {
+        future.fail(ar.cause());
       }
-      future.complete();
     });
     return future;
   }
@@ -2,8 +2,11 @@ package com.redhat.middleware.keynote;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.http.WebSocketFrame;
 import io.vertx.core.json.JsonArray;
@@ -16,6 +19,11 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.CorsHandler;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import static com.redhat.middleware.keynote.LogUtils.format;
 
 /**
@@ -24,25 +32,62 @@ import static com.redhat.middleware.keynote.LogUtils.format;
 public class ServerVerticle extends AbstractVerticle {
 
   public final static Logger LOGGER = LoggerFactory.getLogger(ServerVerticle.class);
+  private static final long LAG_CHECK_INTERVAL = 100;
+  // Team of the admin sockets
+  private static final int NO_TEAM = 0;
   private Counter activeUserCounter;
 
+  private boolean colocatedRouting;
+  // Score frames per second and burst of a connection, 0 (the default) for no limit
+  private double scoreRate;
+  private int scoreBurst;
+  private int writeQueueMaxSize;
+  // New player sockets are rejected when the event loop lags more than this, in ms, 0 to accept them all
+  private long admissionMaxLag;
+  private long lag;
+  private long lagTimer = -1;
+  // Sockets of the players managed by this verticle by team
+  private final Map<Integer, Map<ServerWebSocket, SocketWriter>> teamSockets = new HashMap<>();
+  // Consumers of the team topics, registered while the team has sockets on this verticle
+  private final Map<Integer, MessageConsumer<Broadcast>> teamConsumers = new HashMap<>();
+
   @Override
   public void start(Future<Void> future) throws Exception {
+    colocatedRouting = config().getBoolean("colocated-routing", true);
+    scoreRate = config().getDouble("score-rate", 0.0);
+    scoreBurst = config().getInteger("score-burst", 40);
+    writeQueueMaxSize = config().getInteger("write-queue-max-size", 32768);
+    admissionMaxLag = config().getLong("admission-max-lag", 500L);
+    if (admissionMaxLag > 0) {
+      checkLag();
+    }
+    Broadcast.registerCodec(vertx);
+    vertx.eventBus().<Broadcast>consumer(Broadcast.ALL_ADDRESS,
+        // Copied, a team without sockets left is removed while iterating
+        message -> new ArrayList<>(teamSockets.keySet()).forEach(team -> fanOut(team, message.body())));
+
     Router router = Router.router(vertx);
 
     router.route().handler(BodyHandler.create());
     router.route().handler(CorsHandler.create("*"));
 
     router.get("/health").handler(this::ping);
+    router.get("/metrics").handler(this::metrics);
 
-    vertx.createHttpServer()
+    vertx.createHttpServer(new HttpServerOptions().setWebsocketSubProtocols(BinaryProtocol.SUB_PROTOCOL))
         .websocketHandler(ws -> {
           switch (ws.path()) {
             case "/game/admin":
               onAdminConnection(ws);
               break;
             case "/game":
-              onPlayerConnection(ws);
+              if (admissionMaxLag > 0 && lag > admissionMaxLag) {
+                GameMetrics.SOCKETS_REJECTED.mark();
+                LOGGER.warn(format("Rejecting player connection, event loop lagging by %1$d ms", lag));
+                ws.reject();
+              } else {
+                onPlayerConnection(ws);
+              }
               break;
             default:
               LOGGER.warn(format("Connection to web socket %1$s not supported", ws.path()));
@@ -65,8 +110,32 @@ public class ServerVerticle extends AbstractVerticle {
         });
   }
 
+  @Override
+  public void stop() throws Exception {
+    if (lagTimer != -1) {
+      vertx.cancelTimer(lagTimer);
+    }
+  }
+
+  /**
+   * Measures how late a timer fires on the event loop of the verticle.
+   */
+  private void checkLag() {
+    long scheduled = System.nanoTime();
+    lagTimer = vertx.setTimer(LAG_CHECK_INTERVAL, l -> {
+      lag = Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduled) - LAG_CHECK_INTERVAL);
+      GameMetrics.EVENT_LOOP_LAG.update(lag);
+      checkLag();
+    });
+  }
 
   private void manageWebSocket(String announceAddress, ServerWebSocket socket) {
+    SocketWriter writer = new SocketWriter(socket, isBinaryProtocol(socket), writeQueueMaxSize);
+    DeliveryOptions announceOptions = new DeliveryOptions().setSendTimeout(30000);
+    if (colocatedRouting) {
+      // Let the game verticle know we can take the in-process path if it lives in this JVM
+      announceOptions.addHeader(LocalSession.NODE_HEADER, LocalSession.NODE);
+    }
     socket
         .exceptionHandler(Throwable::printStackTrace)
         .frameHandler(frame -> {
@@ -75,7 +144,7 @@ public class ServerVerticle extends AbstractVerticle {
           // replace it.
           vertx.eventBus().<String>send(announceAddress,
               new JsonObject().put("event", "message").put("message", toJson(frame)),
-              new DeliveryOptions().setSendTimeout(30000),
+              announceOptions,
               ar -> {
                 if (ar.failed()) {
                   LOGGER.error("Rejecting web socket connection", ar.cause());
@@ -83,52 +152,212 @@ public class ServerVerticle extends AbstractVerticle {
                 } else {
                   // Get the id of the player / admin
                   String id = ar.result().body();
-                  String address = id + "/message";
-                  MessageConsumer<JsonObject> consumer = vertx.eventBus().consumer(id);
-                  // Burr
-                  // Once we have the address used for the communication with the game verticle, replace the frame
-                  // handler. Now it just delegates to the event bus
-                  socket
-                      .frameHandler(innerframe -> {
-                        vertx.eventBus().send(address,
-                            new JsonObject().put("event", "message")
-                                .put("message", toJson(innerframe)));
-                      })
-                      .exceptionHandler(t -> {
-                        cleanupConnection(address, consumer);
-                        closeQuietly(socket);
-                      })
-                      .closeHandler(v -> {
-                        cleanupConnection(address, consumer);
-                      });
-
-                  // Register the consumer receiving message from the game verticle to write to the socket
-                  consumer.handler(message -> {
-                    // Message sent from the game verticle to be transferred to the web socket
-                    try {
-                      socket.writeFinalTextFrame(message.body().encode());
-                    } catch (IllegalStateException e) {
-                      // Socket closed.
-                      cleanupConnection(address, consumer);
-                      closeQuietly(socket);
-                    }
-                  }).completionHandler(x -> {
-                      // Everything is setup, send the id to the user.
-                      JsonObject json = new JsonObject().put("type", "id").put("id", id);
-                      //LOGGER.debug(format("<==== %1$s", json.encode()));
-                      socket.writeFinalTextFrame(json.encode());
-
-                      vertx.eventBus().send(address,
-                          new JsonObject().put("event", "init"));
-
-                      activeUserCounter.addAndGet(1, v -> {
-                      });
-                  });
+                  // Only set for players
+                  String header = ar.result().headers().get(Broadcast.TEAM_HEADER);
+                  int team = header == null ? NO_TEAM : Integer.parseInt(header);
+                  LocalSession session = colocatedRouting ? LocalSession.lookup(id) : null;
+                  if (session != null) {
+                    bindLocalSession(id, team, session, writer);
+                  } else {
+                    bindEventBus(id, team, writer);
+                  }
+                  if (team != NO_TEAM) {
+                    joinTeam(team, writer);
+                  }
                 }
               });
         });
   }
 
+  /**
+   * The game verticle managing the player is in the same JVM, frames are handed over directly without going through
+   * the event bus.
+   */
+  private void bindLocalSession(String id, int team, LocalSession session, SocketWriter writer) {
+    ServerWebSocket socket = writer.socket();
+    Handler<Object> forward = score -> {
+      if (score instanceof Buffer) {
+        // Decoded straight into the score fields
+        Buffer data = (Buffer) score;
+        session.sendScore(BinaryProtocol.score(data), BinaryProtocol.consecutive(data),
+            BinaryProtocol.goldenSnitchPopped(data));
+      } else {
+        session.sendToGame((JsonObject) score);
+      }
+    };
+    ScoreThrottle throttle = scoreRate > 0 ? new ScoreThrottle(vertx, scoreRate, scoreBurst, forward) : null;
+    socket
+        .frameHandler(innerframe -> {
+          GameMetrics.FRAMES_IN.mark();
+          onFrame(innerframe, throttle, forward);
+        })
+        .exceptionHandler(t -> {
+          cleanupLocalSession(session, throttle);
+          leaveTeam(team, socket);
+          closeQuietly(socket);
+        })
+        .closeHandler(v -> {
+          cleanupLocalSession(session, throttle);
+          leaveTeam(team, socket);
+        });
+
+    session.attach(message -> {
+      try {
+        writer.write(message);
+      } catch (IllegalStateException e) {
+        // Socket closed.
+        cleanupLocalSession(session, throttle);
+        leaveTeam(team, socket);
+        closeQuietly(socket);
+      }
+    });
+
+    sendId(id, writer);
+    session.sendToGame(new JsonObject().put("event", "init"));
+    activeUserCounter.addAndGet(1, v -> {
+    });
+  }
+
+  private void bindEventBus(String id, int team, SocketWriter writer) {
+    ServerWebSocket socket = writer.socket();
+    String address = id + "/message";
+    MessageConsumer<Object> consumer = vertx.eventBus().consumer(id);
+    // Binary score frames are sent as is, the game verticle reads the score fields from the frame content
+    Handler<Object> forward = message -> {
+      long start = System.nanoTime();
+      vertx.eventBus().send(address, message);
+      GameMetrics.stop(GameMetrics.EVENT_BUS_SEND, start);
+    };
+    ScoreThrottle throttle = scoreRate > 0 ? new ScoreThrottle(vertx, scoreRate, scoreBurst, forward) : null;
+    // Burr
+    // Once we have the address used for the communication with the game verticle, replace the frame
+    // handler. Now it just delegates to the event bus
+    socket
+        .frameHandler(innerframe -> {
+          GameMetrics.FRAMES_IN.mark();
+          onFrame(innerframe, throttle, forward);
+        })
+        .exceptionHandler(t -> {
+          cleanupConnection(address, consumer, throttle);
+          leaveTeam(team, socket);
+          closeQuietly(socket);
+        })
+        .closeHandler(v -> {
+          cleanupConnection(address, consumer, throttle);
+          leaveTeam(team, socket);
+        });
+
+    // Register the consumer receiving message from the game verticle to write to the socket
+    consumer.handler(message -> {
+      // Message sent from the game verticle to be transferred to the web socket
+      try {
+        writer.write(message.body());
+      } catch (IllegalStateException e) {
+        // Socket closed.
+        cleanupConnection(address, consumer, throttle);
+        leaveTeam(team, socket);
+        closeQuietly(socket);
+      }
+    }).completionHandler(x -> {
+      // Everything is setup, send the id to the user.
+      sendId(id, writer);
+
+      vertx.eventBus().send(address,
+          new JsonObject().put("event", "init"));
+
+      activeUserCounter.addAndGet(1, v -> {
+      });
+    });
+  }
+
+  /**
+   * Forwards a player frame, through the throttle for the scores.
+   */
+  private void onFrame(WebSocketFrame frame, ScoreThrottle throttle, Handler<Object> forward) {
+    if (isBinaryScore(frame)) {
+      Buffer data = frame.binaryData();
+      if (throttle != null) {
+        throttle.offer(data, BinaryProtocol.score(data), BinaryProtocol.consecutive(data),
+            BinaryProtocol.goldenSnitchPopped(data));
+      } else {
+        forward.handle(data);
+      }
+      return;
+    }
+    JsonObject json = toJson(frame);
+    JsonObject message = new JsonObject().put("event", "message").put("message", json);
+    if (throttle != null && "score".equals(json.getValue("type"))) {
+      throttle.offer(message, intValue(json, "score"), intValue(json, "consecutive"),
+          Boolean.TRUE.equals(json.getValue("goldenSnitchPopped")));
+    } else {
+      forward.handle(message);
+    }
+  }
+
+  private static int intValue(JsonObject json, String key) {
+    Object value = json.getValue(key);
+    return value instanceof Number ? ((Number) value).intValue() : 0;
+  }
+
+  private void sendId(String id, SocketWriter writer) {
+    JsonObject json = new JsonObject().put("type", "id").put("id", id);
+    //LOGGER.debug(format("<==== %1$s", json.encode()));
+    writer.write(json);
+  }
+
+  /**
+   * Subscribes the verticle to the team topic on the first socket of the team, the broadcasts of the team are then
+   * written to its sockets. The socket leaves the team when it is closed ({@link #leaveTeam(int, ServerWebSocket)}).
+   */
+  private void joinTeam(int team, SocketWriter writer) {
+    Map<ServerWebSocket, SocketWriter> sockets = teamSockets.get(team);
+    if (sockets == null) {
+      sockets = new HashMap<>();
+      teamSockets.put(team, sockets);
+      teamConsumers.put(team,
+          vertx.eventBus().<Broadcast>consumer(Broadcast.teamAddress(team), message -> fanOut(team, message.body())));
+    }
+    sockets.put(writer.socket(), writer);
+  }
+
+  /**
+   * Unsubscribes the verticle from the team topic once the last socket of the team left. Called on every cleanup
+   * path of the socket, does nothing if the socket already left.
+   */
+  private void leaveTeam(int team, ServerWebSocket socket) {
+    Map<ServerWebSocket, SocketWriter> sockets = teamSockets.get(team);
+    if (sockets != null && sockets.remove(socket) != null && sockets.isEmpty()) {
+      teamSockets.remove(team);
+      teamConsumers.remove(team).unregister();
+    }
+  }
+
+  private void fanOut(int team, Broadcast broadcast) {
+    Map<ServerWebSocket, SocketWriter> sockets = teamSockets.get(team);
+    if (sockets == null) {
+      return;
+    }
+    // Copied, a closed socket is removed while iterating
+    for (SocketWriter writer : new ArrayList<>(sockets.values())) {
+      try {
+        writer.write(broadcast);
+      } catch (IllegalStateException e) {
+        // Socket closed.
+        leaveTeam(team, writer.socket());
+      }
+    }
+  }
+
+  private boolean isBinaryProtocol(ServerWebSocket socket) {
+    // The sub-protocol is only accepted by the handshake if it is part of the supported ones
+    String protocols = socket.headers().get("Sec-WebSocket-Protocol");
+    return protocols != null && protocols.contains(BinaryProtocol.SUB_PROTOCOL);
+  }
+
+  private boolean isBinaryScore(WebSocketFrame frame) {
+    return frame.isBinary() && BinaryProtocol.isScore(frame.binaryData());
+  }
+
   private void closeQuietly(ServerWebSocket socket) {
     try {
       socket.close();
@@ -137,7 +366,22 @@ public class ServerVerticle extends AbstractVerticle {
     }
   }
 
-  private void cleanupConnection(String address, MessageConsumer<JsonObject> consumer) {
+  private void cleanupLocalSession(LocalSession session, ScoreThrottle throttle) {
+    if (throttle != null) {
+      throttle.close();
+    }
+    if (session.isAttached()) {
+      session.detach();
+      session.sendToGame(new JsonObject().put("event", "gone"));
+      activeUserCounter.addAndGet(-1, x -> {
+      });
+    }
+  }
+
+  private void cleanupConnection(String address, MessageConsumer<Object> consumer, ScoreThrottle throttle) {
+    if (throttle != null) {
+      throttle.close();
+    }
     consumer.unregister();
     vertx.eventBus().send(address, new JsonObject().put("event", "gone"));
     activeUserCounter.addAndGet(-1, x -> {
@@ -152,11 +396,19 @@ public class ServerVerticle extends AbstractVerticle {
     manageWebSocket("player", socket);
   }
 
-  private JsonObject toJson(WebSocketFrame frame) {
-    // We only expect text frame.
+  static JsonObject toJson(WebSocketFrame frame) {
+    if (frame.isBinary()) {
+      return BinaryProtocol.decode(frame.binaryData());
+    }
     return new JsonObject(frame.textData());
   }
 
+  private void metrics(RoutingContext context) {
+    context.response()
+        .putHeader("Content-Type", "text/plain; version=0.0.4")
+        .end(GameMetrics.scrape());
+  }
+
   private void ping(RoutingContext context) {
     activeUserCounter.get(l -> {
       if (l.succeeded()) {
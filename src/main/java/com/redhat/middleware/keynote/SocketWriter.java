@@ -0,0 +1,98 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the messages of a socket, without buffering without bound for slow clients.
+ * <p>
+ * Above the write queue high watermark ({@code writeQueueMaxSize} bytes), the {@code team-score} and
+ * {@code heartbeat} messages are not written: only the latest one of each type is kept, and written once the queue
+ * drains below the low watermark (half of the high one). The other messages are always written. Not thread safe,
+ * used from the context of the socket.
+ */
+public class SocketWriter {
+
+  private final ServerWebSocket socket;
+  private final boolean binary;
+  // Latest message by type not written yet, null if none
+  private Map<String, Object> stale;
+
+  /**
+   * @param socket            the socket
+   * @param binary            whether the socket uses the binary protocol
+   * @param writeQueueMaxSize the high watermark of the write queue in bytes
+   */
+  public SocketWriter(ServerWebSocket socket, boolean binary, int writeQueueMaxSize) {
+    this.socket = socket;
+    this.binary = binary;
+    socket.setWriteQueueMaxSize(writeQueueMaxSize);
+    socket.drainHandler(v -> drain());
+  }
+
+  public ServerWebSocket socket() {
+    return socket;
+  }
+
+  /**
+   * @param message the message, a {@link JsonObject} or a {@link Broadcast}
+   * @throws IllegalStateException if the socket is closed
+   */
+  public void write(Object message) {
+    if (socket.writeQueueFull()) {
+      String type = type(message);
+      if (isCoalesced(type)) {
+        if (stale == null) {
+          stale = new LinkedHashMap<>();
+        }
+        if (stale.put(type, message) != null) {
+          GameMetrics.FRAMES_OUT_COALESCED.mark();
+        }
+        return;
+      }
+    }
+    send(message);
+  }
+
+  static boolean isCoalesced(String type) {
+    return "team-score".equals(type) || "heartbeat".equals(type);
+  }
+
+  private void drain() {
+    if (stale != null) {
+      List<Object> messages = new ArrayList<>(stale.values());
+      stale = null;
+      try {
+        messages.forEach(this::write);
+      } catch (IllegalStateException e) {
+        // Socket closed.
+      }
+    }
+  }
+
+  private void send(Object message) {
+    if (message instanceof Broadcast) {
+      ((Broadcast) message).write(socket, binary);
+      return;
+    }
+    JsonObject json = (JsonObject) message;
+    GameMetrics.FRAMES_OUT.mark();
+    if (binary) {
+      socket.writeFinalBinaryFrame(BinaryProtocol.encode(json));
+    } else {
+      socket.writeFinalTextFrame(json.encode());
+    }
+  }
+
+  private static String type(Object message) {
+    if (message instanceof Broadcast) {
+      return ((Broadcast) message).type();
+    }
+    return ((JsonObject) message).getString("type");
+  }
+}
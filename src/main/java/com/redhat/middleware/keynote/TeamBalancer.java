@@ -0,0 +1,135 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Counter;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Assigns the players to the teams, without a cluster round-trip per player.
+ * <p>
+ * The balancer knows the live players of each team managed by this node, and the players of the other nodes read
+ * from the cluster-wide {@code redhat.team.N} counters on a schedule. A new player joins the team with the fewest
+ * players, a returning player keeps its team unless that team has more than {@code maxImbalance} players above the
+ * smallest one. Between two reconciliations the other nodes are not seen, the teams may drift apart by the players
+ * those nodes assigned meanwhile.
+ * <p>
+ * The balancer is shared by the game verticles of a Vert.x instance, the first one creating it owns the
+ * reconciliation timer.
+ */
+public class TeamBalancer implements Shareable {
+
+  private static final String LOCAL_MAP_NAME = "redhat.team.balancer";
+  private static final String LOCAL_MAP_KEY = "balancer";
+
+  // Indexed by team number, guarded by this
+  private final long[] local;
+  private final long[] remote;
+  private final Counter[] counters;
+  private final int maxImbalance;
+  // Ties are broken from a random team, so the nodes do not all fill the same team first
+  private final int offset;
+
+  TeamBalancer(Map<Integer, Counter> counters, int maxImbalance) {
+    int size = 1;
+    for (Integer team : counters.keySet()) {
+      size = Math.max(size, team + 1);
+    }
+    this.local = new long[size];
+    this.remote = new long[size];
+    this.counters = new Counter[size];
+    for (Map.Entry<Integer, Counter> entry : counters.entrySet()) {
+      this.counters[entry.getKey()] = entry.getValue();
+    }
+    this.maxImbalance = maxImbalance;
+    this.offset = ThreadLocalRandom.current().nextInt(size);
+  }
+
+  /**
+   * Gets the balancer of the given Vert.x instance, creating it if needed. Must be called from a verticle context,
+   * the reconciliation timer of a new balancer runs on this context.
+   *
+   * @param vertx             the Vert.x instance
+   * @param counters          the cluster-wide live player counters indexed by team number
+   * @param reconcileInterval the period in ms between two reads of the counters
+   * @param maxImbalance      the number of players a team of a returning player may have above the smallest team
+   * @return the balancer
+   */
+  public static TeamBalancer share(Vertx vertx, Map<Integer, Counter> counters, long reconcileInterval,
+                                   int maxImbalance) {
+    LocalMap<String, TeamBalancer> map = vertx.sharedData().getLocalMap(LOCAL_MAP_NAME);
+    TeamBalancer balancer = new TeamBalancer(counters, maxImbalance);
+    TeamBalancer existing = map.putIfAbsent(LOCAL_MAP_KEY, balancer);
+    if (existing != null) {
+      return existing;
+    }
+    balancer.reconcile();
+    vertx.setPeriodic(reconcileInterval, l -> balancer.reconcile());
+    return balancer;
+  }
+
+  /**
+   * Assigns a team to a player joining this node, the player is counted in the team until {@link #leave(int)}.
+   *
+   * @param preferred the team of a returning player, 0 for a new player
+   * @return the team number
+   */
+  public synchronized int assign(int preferred) {
+    int smallest = -1;
+    for (int i = 0; i < counters.length; i++) {
+      int team = (offset + i) % counters.length;
+      if (counters[team] != null && (smallest < 0 || players(team) < players(smallest))) {
+        smallest = team;
+      }
+    }
+    int team = smallest;
+    if (preferred > 0 && preferred < counters.length && counters[preferred] != null
+        && players(preferred) - players(smallest) <= maxImbalance) {
+      team = preferred;
+    }
+    local[team]++;
+    return team;
+  }
+
+  /**
+   * A player managed by this node left its team.
+   *
+   * @param team the team number
+   */
+  public synchronized void leave(int team) {
+    if (team > 0 && team < local.length && local[team] > 0) {
+      local[team]--;
+    }
+  }
+
+  /**
+   * @param team the team number
+   * @return the estimated number of players of the team in the cluster
+   */
+  public synchronized long players(int team) {
+    return remote[team] + local[team];
+  }
+
+  /**
+   * Reads the cluster-wide counters, the players of the other nodes are their value minus the players of this node.
+   */
+  public void reconcile() {
+    for (int team = 0; team < counters.length; team++) {
+      if (counters[team] != null) {
+        int index = team;
+        counters[team].get(ar -> {
+          if (ar.succeeded()) {
+            update(index, ar.result());
+          }
+        });
+      }
+    }
+  }
+
+  synchronized void update(int team, long cluster) {
+    remote[team] = Math.max(0, cluster - local[team]);
+  }
+}
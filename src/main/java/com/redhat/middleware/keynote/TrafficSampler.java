@@ -0,0 +1,34 @@
+package com.redhat.middleware.keynote;
+
+/**
+ * Selects the players receiving a configuration sent to a percentage of the traffic.
+ * <p>
+ * The players are bucketed by a hash of their id, a player is sampled when its bucket is below the percentage. The
+ * selection does not need the player list (no shuffle, no copy), gives the same answer on every node, and a player
+ * stays in (or out of) the sample across pushes as long as the percentage does not decrease.
+ */
+public class TrafficSampler {
+
+  // Buckets of 0.01%
+  private static final int BUCKETS = 10000;
+
+  /**
+   * @param userId     the player id
+   * @param percentage the percentage of players to select, between 0 and 100
+   * @return whether the player is part of the sample
+   */
+  public static boolean isSampled(String userId, double percentage) {
+    return bucket(userId) < percentage * (BUCKETS / 100);
+  }
+
+  static int bucket(String userId) {
+    // String.hashCode is specified, the murmur3 finalizer spreads the similar ids
+    int h = userId.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return (h & Integer.MAX_VALUE) % BUCKETS;
+  }
+}
@@ -1,39 +1,125 @@
 package com.redhat.middleware.keynote;
 
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Generates names.
+ * <p>
+ * The names ({@code Adjective Noun}) are indexed, the positions of the name sequence walk the index space through an
+ * affine permutation so consecutive players get unrelated names. Once all the names have been used, the names get a
+ * number ({@code Adjective Noun 2}). The generation is stateless, constant time and without lock: the names are unique
+ * as long as each position is only used once, the {@link NameService} leases disjoint ranges of positions to the
+ * nodes of the cluster. The names of the players who left are handed out again by the {@link NameService}.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class UserNameGenerator {
 
-  private final static Set<String> used = new HashSet<>();
-
-  public static String generate() {
-    int i = 0;
-    String username = null;
-    while (i < 100) {
-      int random1 = (int) Math.floor(Math.random() * ADJECTIVES.length);
-      int random2 = (int) Math.floor(Math.random() * NOUNS.length);
-      username = toTitleCase(ADJECTIVES[random1], NOUNS[random2]);
+  /**
+   * Generates the name at the given position of the name sequence.
+   *
+   * @param count the position
+   * @return the name
+   */
+  public static String generate(long count) {
+    return decode(count / SIZE * SIZE + permute(count % SIZE));
+  }
 
-      if (!used.add(username)) {
-        i++;
-      } else {
-        return username;
+  /**
+   * Encodes a generated name in a long, 8 bytes instead of a string to store.
+   *
+   * @param username the name
+   * @return the code of the name, {@code -1} if the name was not generated
+   * @see #decode(long)
+   */
+  public static long encode(String username) {
+    if (username == null) {
+      return -1;
+    }
+    int separator = username.indexOf(' ');
+    if (separator < 0) {
+      return -1;
+    }
+    int suffix = username.indexOf(' ', separator + 1);
+    Integer first = FIRST_INDEXES.get(username.substring(0, separator));
+    Integer last = LAST_INDEXES.get(suffix < 0 ? username.substring(separator + 1)
+        : username.substring(separator + 1, suffix));
+    if (first == null || last == null) {
+      return -1;
+    }
+    long generation = 1;
+    if (suffix >= 0) {
+      try {
+        generation = Long.parseLong(username.substring(suffix + 1));
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+      if (generation < 2) {
+        return -1;
       }
     }
+    return (generation - 1) * SIZE + first * LAST_NAMES.length + last;
+  }
+
+  /**
+   * @param code the code of a name, from {@link #encode(String)}
+   * @return the name
+   */
+  public static String decode(long code) {
+    String name = name((int) (code % SIZE));
+    long generation = code / SIZE + 1;
+    return generation == 1 ? name : name + " " + generation;
+  }
+
+  /**
+   * @return the number of distinct names
+   */
+  static int capacity() {
+    return SIZE;
+  }
+
+  private static int permute(long count) {
+    return (int) ((count * MULTIPLIER + OFFSET) % SIZE);
+  }
 
-    return username;
+  private static String name(int index) {
+    return FIRST_NAMES[index / LAST_NAMES.length] + " " + LAST_NAMES[index % LAST_NAMES.length];
   }
 
-  private static String toTitleCase(String firstname, String lastname) {
-    return firstname.substring(0, 1).toUpperCase() + firstname.substring(1)
-        + " "
-        + lastname.substring(0, 1).toUpperCase() + lastname.substring(1);
+  private static String toTitleCase(String word) {
+    return word.substring(0, 1).toUpperCase() + word.substring(1);
+  }
+
+  private static String[] distinct(String[] words) {
+    Set<String> distinct = new LinkedHashSet<>();
+    for (String word : words) {
+      distinct.add(toTitleCase(word));
+    }
+    return distinct.toArray(new String[distinct.size()]);
+  }
+
+  private static Map<String, Integer> indexes(String[] words) {
+    Map<String, Integer> indexes = new HashMap<>();
+    for (int i = 0; i < words.length; i++) {
+      indexes.put(words[i], i);
+    }
+    return indexes;
+  }
+
+  private static long coprimeMultiplier(int size) {
+    // Around the golden ratio of the size, the successive names are far apart
+    long multiplier = (long) (size * 0.6180339887);
+    while (gcd(multiplier, size) != 1) {
+      multiplier++;
+    }
+    return multiplier;
+  }
+
+  private static long gcd(long a, long b) {
+    return b == 0 ? a : gcd(b, a % b);
   }
 
   private static final String[] ADJECTIVES = {
@@ -43,4 +129,13 @@ public class UserNameGenerator {
   private static final String[] NOUNS = {
       "head","crest","crown","tooth","fang","horn","frill","skull","bone","tongue","throat","voice","nose","snout","chin","eye","sight","seer","speaker","singer","song","chanter","howler","chatter","shrieker","shriek","jaw","bite","biter","neck","shoulder","fin","wing","arm","lifter","grasp","grabber","hand","paw","foot","finger","toe","thumb","talon","palm","touch","racer","runner","hoof","fly","flier","swoop","roar","hiss","hisser","snarl","dive","diver","rib","chest","back","ridge","leg","legs","tail","beak","walker","lasher","swisher","carver","kicker","roarer","crusher","spike","shaker","charger","hunter","weaver","crafter","binder","scribe","muse","snap","snapper","slayer","stalker","track","tracker","scar","scarer","fright","killer","death","doom","healer","saver","friend","foe","guardian","thunder","lightning","cloud","storm","forger","scale","hair","braid","nape","belly","thief","stealer","reaper","giver","taker","dancer","player","gambler","twister","turner","painter","dart","drifter","sting","stinger","venom","spur","ripper","swallow","devourer","knight","lord","queen","king","master","prince","princess","duke","samurai","ninja","knave","sage","wizard","witch","warlock","warrior","jester","paladin","bard","trader","sword","shield","knife","dagger","arrow","bow","fighter","bane","follower","leader","scourge","watcher","cat","panther","tiger","cougar","puma","jaguar","ocelot","lynx","lion","leopard","ferret","weasel","wolverine","bear","raccoon","dog","wolf","kitten","puppy","cub","fox","hound","terrier","coyote","hyena","jackal","pig","horse","donkey","stallion","mare","zebra","antelope","gazelle","deer","buffalo","bison","boar","elk","whale","dolphin","shark","fish","minnow","salmon","ray","fisher","otter","gull","duck","goose","crow","raven","bird","eagle","raptor","hawk","falcon","moose","heron","owl","stork","crane","sparrow","robin","parrot","cockatoo","carp","lizard","gecko","iguana","snake","python","viper","boa","condor","vulture","spider","fly","scorpion","heron","oriole","toucan","bee","wasp","hornet","rabbit","bunny","hare","brow","mustang","ox","piper","soarer","flasher","moth","mask","hide","hero","antler","chill","chiller","gem","ogre","myth","elf","fairy","pixie","dragon","griffin","unicorn","pegasus","sprite","fancier","chopper","slicer","skinner","butterfly","legend","wanderer","rover","raver","loon","lancer","glass","glazer","flame","crystal","lantern","lighter","cloak","bell","ringer","keeper","centaur","bolt","catcher","whimsey","quester","rat","mouse","serpent","wyrm","gargoyle","thorn","whip","rider","spirit","sentry","bat","beetle","burn","cowl","stone","gem","collar","mark","grin","scowl","spear","razor","edge","seeker","jay","ape","monkey","gorilla","koala","kangaroo","yak","sloth","ant","roach","weed","seed","eater","razor","shirt","face","goat","mind","shift","rider","face","mole","vole","pirate","llama","stag","bug","cap","boot","drop","hugger","sargent","snagglefoot","carpet","curtain"
   };
+
+  // Derived from the word lists, declared after them (static initialization order)
+  private static final String[] FIRST_NAMES = distinct(ADJECTIVES);
+  private static final String[] LAST_NAMES = distinct(NOUNS);
+  private static final Map<String, Integer> FIRST_INDEXES = indexes(FIRST_NAMES);
+  private static final Map<String, Integer> LAST_INDEXES = indexes(LAST_NAMES);
+  private static final int SIZE = FIRST_NAMES.length * LAST_NAMES.length;
+  private static final long MULTIPLIER = coprimeMultiplier(SIZE);
+  private static final long OFFSET = SIZE / 3;
 }
@@ -0,0 +1,62 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AchievementCacheTest {
+
+  private final AchievementCache cache = new AchievementCache();
+  private final JsonObject achievements = new JsonObject().put("pops1", true);
+
+  @Test
+  public void testFetchedAchievementsAreCachedUntilInvalidated() {
+    assertThat(cache.get("p1")).isNull();
+    cache.complete("p1", cache.fetch("p1"), achievements);
+    assertThat(cache.get("p1")).isEqualTo(achievements);
+
+    cache.invalidate("p1");
+    assertThat(cache.get("p1")).isNull();
+  }
+
+  @Test
+  public void testFetchInvalidatedInFlightIsNotCached() {
+    Object token = cache.fetch("p1");
+    cache.invalidate("p1");
+    cache.complete("p1", token, achievements);
+    assertThat(cache.get("p1")).isNull();
+
+    token = cache.fetch("p1");
+    cache.invalidate(null);
+    cache.complete("p1", token, achievements);
+    assertThat(cache.get("p1")).isNull();
+  }
+
+  @Test
+  public void testPlayersLeavingTheTopAreEvicted() {
+    cache.complete("p1", cache.fetch("p1"), achievements);
+    cache.complete("p2", cache.fetch("p2"), achievements);
+    cache.retain(Collections.singletonList("p2"));
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.get("p2")).isEqualTo(achievements);
+  }
+
+  @Test
+  public void testFetchInFlightIsNotRestarted() {
+    Object token = cache.fetch("p1");
+    assertThat(cache.get("p1")).isNull();
+    assertThat(cache.isFetching("p1")).isTrue();
+    cache.complete("p1", token, achievements);
+    assertThat(cache.isFetching("p1")).isFalse();
+    assertThat(cache.get("p1")).isEqualTo(achievements);
+
+    cache.invalidate("p1");
+    token = cache.fetch("p1");
+    cache.abort("p1", token);
+    assertThat(cache.isFetching("p1")).isFalse();
+    assertThat(cache.get("p1")).isNull();
+  }
+}
@@ -0,0 +1,94 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryProtocolTest {
+
+  @Test
+  public void testScoreFrame() {
+    Buffer frame = BinaryProtocol.encodeScore(120, 7, true);
+
+    assertThat(BinaryProtocol.isScore(frame)).isTrue();
+    assertThat(BinaryProtocol.score(frame)).isEqualTo(120);
+    assertThat(BinaryProtocol.consecutive(frame)).isEqualTo(7);
+    assertThat(BinaryProtocol.goldenSnitchPopped(frame)).isTrue();
+
+    JsonObject json = BinaryProtocol.decode(frame);
+    assertThat(json.getString("type")).isEqualTo("score");
+    assertThat(json.getInteger("score")).isEqualTo(120);
+  }
+
+  @Test
+  public void testRegistrationFrame() {
+    String id = UUID.randomUUID().toString();
+    JsonObject json = BinaryProtocol.decode(BinaryProtocol.encodeRegister(id, 3));
+    assertThat(json.getString("id")).isEqualTo(id);
+    assertThat(json.getInteger("team")).isEqualTo(3);
+
+    assertThat(BinaryProtocol.decode(BinaryProtocol.encodeRegister(null, 0))).isEqualTo(new JsonObject());
+  }
+
+  @Test
+  public void testFixedLayoutMessages() {
+    Buffer teamScore = BinaryProtocol.encode(new JsonObject().put("type", "team-score").put("score", 500));
+    assertThat(teamScore.length()).isEqualTo(5);
+    assertThat(teamScore.getByte(0)).isEqualTo(BinaryProtocol.TYPE_TEAM_SCORE);
+    assertThat(teamScore.getInt(1)).isEqualTo(500);
+
+    Buffer state = BinaryProtocol.encode(new JsonObject().put("type", "state").put("state", "play"));
+    assertThat(state.length()).isEqualTo(2);
+
+    Buffer configuration = BinaryProtocol.encode(new JsonObject()
+        .put("type", "configuration")
+        .put("team", 2)
+        .put("playerId", UUID.randomUUID().toString())
+        .put("username", "Azure Fang")
+        .put("configuration", new JsonObject(InternalServiceVerticle.defaultConfiguration)));
+    assertThat(configuration.getByte(0)).isEqualTo(BinaryProtocol.TYPE_CONFIGURATION);
+    // All the fields but the score
+    assertThat(configuration.getUnsignedShort(1)).isEqualTo(0xFFFF & ~0b10);
+    assertThat(configuration.getByte(3)).isEqualTo((byte) 2);
+    assertThat(configuration.getByte(configuration.length() - 1)).isEqualTo((byte) 100);
+  }
+
+  @Test
+  public void testAbsentConfigurationFieldsAreNotWritten() {
+    Buffer configuration = BinaryProtocol.encode(new JsonObject()
+        .put("type", "configuration")
+        .put("configuration", new JsonObject().put("opacity", 85).put("trafficPercentage", 50)));
+    assertThat(configuration.getByte(0)).isEqualTo(BinaryProtocol.TYPE_CONFIGURATION);
+    assertThat(configuration.getUnsignedShort(1)).isEqualTo(1 << 4 | 1 << 15);
+    assertThat(configuration.length()).isEqualTo(6);
+    assertThat(configuration.getShort(3)).isEqualTo((short) 85);
+    assertThat(configuration.getByte(5)).isEqualTo((byte) 50);
+  }
+
+  @Test
+  public void testConfigurationNotFittingTheLayoutIsSentAsJson() {
+    JsonObject unknownKey = new JsonObject()
+        .put("type", "configuration")
+        .put("configuration", new JsonObject(InternalServiceVerticle.defaultConfiguration).put("theme", "dark"));
+    Buffer frame = BinaryProtocol.encode(unknownKey);
+    assertThat(frame.getByte(0)).isEqualTo(BinaryProtocol.TYPE_JSON);
+    assertThat(BinaryProtocol.decode(frame)).isEqualTo(unknownKey);
+
+    JsonObject outOfRange = new JsonObject()
+        .put("type", "configuration")
+        .put("configuration", new JsonObject().put("trafficPercentage", 1000));
+    assertThat(BinaryProtocol.encode(outOfRange).getByte(0)).isEqualTo(BinaryProtocol.TYPE_JSON);
+  }
+
+  @Test
+  public void testMessagesWithoutLayoutAreSentAsJson() {
+    JsonObject heartbeat = new JsonObject().put("type", "heartbeat");
+    Buffer frame = BinaryProtocol.encode(heartbeat);
+    assertThat(frame.getByte(0)).isEqualTo(BinaryProtocol.TYPE_JSON);
+    assertThat(BinaryProtocol.decode(frame)).isEqualTo(heartbeat);
+  }
+}
@@ -0,0 +1,36 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoardHubTest {
+
+  @Test
+  public void testDeltaOnlyContainsChangedPositions() {
+    JsonArray previous = new JsonArray()
+        .add(new JsonObject().put("uuid", "a").put("score", 10))
+        .add(new JsonObject().put("uuid", "b").put("score", 5));
+    JsonArray current = new JsonArray()
+        .add(new JsonObject().put("uuid", "a").put("score", 10))
+        .add(new JsonObject().put("uuid", "c").put("score", 7))
+        .add(new JsonObject().put("uuid", "b").put("score", 5));
+
+    JsonObject delta = BoardHub.delta(previous, current);
+
+    assertThat(delta.getString("type")).isEqualTo("delta");
+    assertThat(delta.getInteger("size")).isEqualTo(3);
+    assertThat(delta.getJsonArray("changes")).isEqualTo(new JsonArray()
+        .add(new JsonObject().put("index", 1).put("value", current.getJsonObject(1)))
+        .add(new JsonObject().put("index", 2).put("value", current.getJsonObject(2))));
+  }
+
+  @Test
+  public void testNoChangeGivesEmptyDelta() {
+    JsonArray scores = new JsonArray().add(new JsonObject().put("team", 1).put("score", 500));
+
+    assertThat(BoardHub.delta(scores, scores.copy()).getJsonArray("changes")).isEmpty();
+  }
+}
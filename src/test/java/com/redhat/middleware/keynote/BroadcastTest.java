@@ -0,0 +1,79 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class BroadcastTest {
+
+  @Test
+  public void testWireRoundTrip() {
+    Map<String, Object> message = new HashMap<>();
+    message.put("type", "state");
+    message.put("state", "play");
+    Broadcast broadcast = Broadcast.of(message);
+    Broadcast.Codec codec = new Broadcast.Codec();
+
+    Buffer wire = Buffer.buffer().appendString("header");
+    codec.encodeToWire(wire, broadcast);
+    Broadcast decoded = codec.decodeFromWire("header".length(), wire);
+
+    assertThat(new JsonObject(decoded.text())).isEqualTo(new JsonObject(message));
+    assertThat(decoded.type()).isEqualTo("state");
+    assertThat(codec.transform(broadcast)).isSameAs(broadcast);
+  }
+
+  @Test
+  public void testSharedTextBufferIsWrittenToEverySocket() {
+    Vertx vertx = Vertx.vertx();
+    try {
+      String encoded = new JsonObject().put("type", "team-score").put("score", 1200).encode();
+      Buffer text = Buffer.buffer(encoded);
+      List<ServerWebSocket> sockets = new CopyOnWriteArrayList<>();
+      AtomicBoolean listening = new AtomicBoolean();
+      HttpServer server = vertx.createHttpServer()
+          .websocketHandler(sockets::add)
+          .listen(9107, ar -> listening.set(ar.succeeded()));
+      await().untilAtomic(listening, is(true));
+
+      List<String> received = new CopyOnWriteArrayList<>();
+      HttpClient client = vertx.createHttpClient();
+      for (int i = 0; i < 2; i++) {
+        client.websocket(server.actualPort(), "localhost", "/", socket -> socket.handler(b -> received.add(b.toString())));
+      }
+      await().until(() -> sockets.size() == 2);
+
+      // Written twice to each socket, like the successive board snapshots
+      vertx.runOnContext(v -> {
+        for (int i = 0; i < 2; i++) {
+          for (ServerWebSocket socket : sockets) {
+            Broadcast.writeText(socket, text);
+          }
+        }
+      });
+
+      await().until(() -> received.size() == 4);
+      assertThat(received).containsOnly(encoded);
+      // Not consumed by the writes
+      assertThat(text.toString()).isEqualTo(encoded);
+    } finally {
+      AtomicBoolean closed = new AtomicBoolean();
+      vertx.close(ar -> closed.set(true));
+      await().untilAtomic(closed, is(true));
+    }
+  }
+}
@@ -107,7 +107,7 @@ public class ClusteredTest {
       registrations.add(new JsonObject()
           .put("id", UUID.randomUUID().toString())
           .put("team", (team % 3) + 1)
-          .put("username", UserNameGenerator.generate()));
+          .put("username", UserNameGenerator.generate(i)));
       team++;
     }
 
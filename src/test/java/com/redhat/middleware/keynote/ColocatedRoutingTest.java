@@ -0,0 +1,165 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Compares the event bus routing with the co-located routing between the sockets and the game verticles: the
+ * co-located routing must have a lower mean latency and allocate less per round trip. Deploys the game server four
+ * times under load, excluded from the default test run and run by the {@code load} profile.
+ * <p>
+ * The round trip is the {@code init} event sent by the server verticle once the player id is written to the socket,
+ * answered by the {@code configuration} message of the game verticle. Unlike the scores, it does not leave the JVM.
+ */
+public class ColocatedRoutingTest {
+
+  private Vertx vertx;
+
+  private int players = 20;
+  private int rounds = 10;
+
+  @After
+  public void tearDown() {
+    AtomicBoolean done = new AtomicBoolean();
+    vertx.close(ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+  }
+
+  @Test
+  public void testEventBusVersusColocatedRouting() {
+    // Each mode runs twice, first and last, so that neither gets all the JIT compilation done by the other
+    Result eventBus = run(false);
+    Result colocated = run(true);
+    colocated = colocated.plus(run(true));
+    eventBus = eventBus.plus(run(false));
+
+    assertThat(eventBus.roundTrips).isEqualTo(2 * players * rounds);
+    assertThat(colocated.roundTrips).isEqualTo(2 * players * rounds);
+    String description = "co-located routing: " + colocated + ", event bus routing: " + eventBus;
+    assertThat(colocated.meanMicros()).as(description).isLessThan(eventBus.meanMicros());
+    assertThat(colocated.allocatedPerRoundTrip()).as(description).isLessThan(eventBus.allocatedPerRoundTrip());
+  }
+
+  private Result run(boolean colocated) {
+    if (vertx != null) {
+      tearDown();
+    }
+    AtomicBoolean deployed = new AtomicBoolean();
+    JsonObject config = new JsonObject()
+        .put("colocated-routing", colocated)
+        .put("game-verticle-instances", 2)
+        .put("server-verticle-instances", 2);
+    Vertx.clusteredVertx(new VertxOptions(), v -> {
+      vertx = v.result();
+      vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+          ar -> deployed.set(ar.succeeded()));
+    });
+    await().untilAtomic(deployed, is(true));
+
+    // Discarded, warms up the deployment
+    measure();
+    return measure();
+  }
+
+  private Result measure() {
+    List<Long> latencies = new CopyOnWriteArrayList<>();
+    AtomicInteger completed = new AtomicInteger();
+    long allocatedBefore = allocatedBytes();
+    long begin = System.currentTimeMillis();
+    for (int i = 0; i < players; i++) {
+      connect(vertx.createHttpClient(), rounds, latencies, completed);
+    }
+
+    await().atMost(2, TimeUnit.MINUTES).until(() -> completed.get() >= players * rounds);
+    long duration = System.currentTimeMillis() - begin;
+    return new Result(latencies, allocatedBytes() - allocatedBefore, duration);
+  }
+
+  // Each player reconnects once it got its configuration, the given number of times
+  private void connect(HttpClient client, int remaining, List<Long> latencies, AtomicInteger completed) {
+    client.websocket(9001, "localhost", "/game", socket -> {
+      AtomicLong idAt = new AtomicLong();
+      socket.handler(buffer -> {
+        String type = buffer.toJsonObject().getString("type");
+        if ("id".equals(type)) {
+          idAt.set(System.nanoTime());
+        } else if ("configuration".equals(type) && idAt.get() != 0) {
+          latencies.add(System.nanoTime() - idAt.get());
+          completed.incrementAndGet();
+          socket.close();
+          if (remaining > 1) {
+            connect(client, remaining - 1, latencies, completed);
+          } else {
+            client.close();
+          }
+        }
+      });
+      socket.writeFinalTextFrame("{}");
+    });
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long total = 0;
+    for (long allocated : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+      if (allocated > 0) {
+        total += allocated;
+      }
+    }
+    return total;
+  }
+
+  private static class Result {
+    final int roundTrips;
+    final long totalNanos;
+    final long allocatedBytes;
+    final long duration;
+
+    Result(List<Long> latencies, long allocatedBytes, long duration) {
+      this(latencies.size(), latencies.stream().mapToLong(Long::longValue).sum(), allocatedBytes, duration);
+    }
+
+    private Result(int roundTrips, long totalNanos, long allocatedBytes, long duration) {
+      this.roundTrips = roundTrips;
+      this.totalNanos = totalNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.duration = duration;
+    }
+
+    Result plus(Result other) {
+      return new Result(roundTrips + other.roundTrips, totalNanos + other.totalNanos,
+          allocatedBytes + other.allocatedBytes, duration + other.duration);
+    }
+
+    double meanMicros() {
+      return totalNanos / 1000.0 / Math.max(roundTrips, 1);
+    }
+
+    long allocatedPerRoundTrip() {
+      return allocatedBytes / Math.max(roundTrips, 1);
+    }
+
+    @Override
+    public String toString() {
+      return roundTrips + " round trips in " + duration + " ms, mean latency " + (long) meanMicros() + " us, "
+          + allocatedPerRoundTrip() + " bytes allocated per round trip";
+    }
+  }
+}
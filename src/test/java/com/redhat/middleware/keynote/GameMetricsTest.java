@@ -0,0 +1,31 @@
+package com.redhat.middleware.keynote;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GameMetricsTest {
+
+  @Test
+  public void testScrape() {
+    GameMetrics.FRAMES_IN.mark(3);
+    GameMetrics.teamPlayers(2).inc();
+    GameMetrics.ACHIEVEMENT_PUT.update(5, TimeUnit.MILLISECONDS);
+
+    String text = GameMetrics.scrape();
+
+    assertThat(text).contains("# TYPE game_frames_in_total counter\n");
+    assertThat(text).containsPattern("\ngame_team_2_players [1-9]");
+    assertThat(text).contains("game_achievement_put_seconds{quantile=\"0.99\"} ");
+    assertThat(text).containsPattern("\ngame_achievement_put_seconds_count [1-9]");
+  }
+
+  @Test
+  public void testSanitize() {
+    assertThat(GameMetrics.sanitize("vertx.http.servers.0.0.0.0:9001.requests"))
+        .isEqualTo("vertx_http_servers_0_0_0_0:9001_requests");
+    assertThat(GameMetrics.sanitize("1m")).isEqualTo("_m");
+  }
+}
@@ -0,0 +1,145 @@
+package com.redhat.middleware.keynote;
+
+import groovy.lang.GroovyObject;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Score dispatch and aggregation, and team broadcasts of the game verticle.
+ * <p>
+ * The score benchmarks keep a score server request in flight (the aggregated score of the player is not defaulted)
+ * so only the aggregation is measured. The broadcasts go to the event bus of a local Vert.x instance without
+ * consumers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameVerticleBenchmark {
+
+  private Vertx vertx;
+  private GroovyObject verticle;
+  private GroovyObject player;
+  private Handler<Map<String, Object>> eventHandler;
+  private final List<Map<String, Object>> scoreEvents = new ArrayList<>();
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    vertx = Vertx.vertx();
+    verticle = GroovyClasses.gameVerticle(vertx);
+    GroovyObject team = GroovyClasses.newInstance("Team", 1);
+    player = GroovyClasses.newInstance("Player", UUID.randomUUID().toString(), team, "Player");
+    // Pending score, the next ones are only aggregated
+    ((PlayerScore) player).offerScore(0, 0, false);
+    Runnable onGone = () -> {
+    };
+    eventHandler = (Handler<Map<String, Object>>) verticle.invokeMethod("eventHandler", new Object[]{player, onGone});
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < 1024; i++) {
+      // Structure of a text score frame, as received from the socket
+      Map<String, Object> message = new LinkedHashMap<>();
+      message.put("type", "score");
+      message.put("score", random.nextInt(10000));
+      message.put("consecutive", random.nextInt(50));
+      message.put("goldenSnitchPopped", random.nextInt(100) == 0);
+      Map<String, Object> event = new LinkedHashMap<>();
+      event.put("event", "message");
+      event.put("message", message);
+      scoreEvents.add(event);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @State(Scope.Benchmark)
+  public static class Broadcast {
+
+    @Param({"100", "1000"})
+    int teamSize;
+
+    @Param({"100", "20"})
+    int trafficPercentage;
+
+    GroovyObject team;
+    Map<String, Object> configurationMessage;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+      team = GroovyClasses.newInstance("Team", 1);
+      PlayerRegistry<Object> players = (PlayerRegistry<Object>) team.getProperty("players");
+      for (int i = 0; i < teamSize; i++) {
+        String id = UUID.randomUUID().toString();
+        players.add(id, GroovyClasses.newInstance("Player", id, team, "Player " + i));
+      }
+
+      Map<String, Object> configuration = new HashMap<>();
+      configuration.put("opacity", 85);
+      configuration.put("speed", 50);
+      configuration.put("trafficPercentage", trafficPercentage);
+      configurationMessage = new HashMap<>();
+      configurationMessage.put("type", "configuration");
+      configurationMessage.put("configuration", configuration);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object sendScore() {
+    return verticle.invokeMethod("sendScore", score());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object sendScoreContended() {
+    return verticle.invokeMethod("sendScore", score());
+  }
+
+  /**
+   * Dispatch of a text score frame by the handler of the player, the score is then aggregated like in
+   * {@link #sendScore()}.
+   */
+  @Benchmark
+  @Threads(1)
+  public void scoreEvent() {
+    eventHandler.handle(scoreEvents.get(ThreadLocalRandom.current().nextInt(1024)));
+  }
+
+  @Benchmark
+  public Object broadcastTeamMessage(Broadcast broadcast) {
+    return verticle.invokeMethod("broadcastTeamMessage", new Object[]{broadcast.team, broadcast.configurationMessage});
+  }
+
+  private Object[] score() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new Object[]{player, random.nextInt(10000), random.nextInt(50), random.nextInt(100) == 0};
+  }
+}
@@ -0,0 +1,122 @@
+package com.redhat.middleware.keynote;
+
+import groovy.lang.GroovyObject;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.groovy.core.http.HttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Score batching of the game verticle against the score server stand-in, the verticle is not deployed: only the
+ * score client and the batch settings are set.
+ */
+public class GameVerticleTest {
+
+  private Vertx vertx;
+  private GroovyObject verticle;
+  private final List<Object> players = new ArrayList<>();
+  // Players who received their achievements
+  private final Set<String> achieved = ConcurrentHashMap.newKeySet();
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    vertx = Vertx.vertx();
+    verticle = GroovyClasses.gameVerticle(vertx);
+    verticle.setProperty("scoreClient", new HttpClient(vertx.createHttpClient()));
+    verticle.setProperty("scoreHost", "localhost");
+    verticle.setProperty("scorePath", "/testScoreServer");
+    verticle.setProperty("scoreBatchWindow", 50);
+    verticle.setProperty("scoreBatchSize", 100);
+    // The achievement updates get a 404 from the stand-in
+    verticle.setProperty("achievementClient", new HttpClient(vertx.createHttpClient()));
+    verticle.setProperty("achievementHost", "localhost");
+    verticle.setProperty("achievementPath", "/testAchievementServer");
+
+    GroovyObject team = GroovyClasses.newInstance("Team", 1);
+    for (int i = 0; i < 3; i++) {
+      String id = UUID.randomUUID().toString();
+      Object player = GroovyClasses.newInstance("Player", id, team, "Player " + i);
+      ((PlayerRegistry<Object>) team.getProperty("players")).add(id, player);
+      players.add(player);
+      vertx.eventBus().<JsonObject>consumer(id, message -> {
+        if ("achievements".equals(message.body().getString("type"))) {
+          achieved.add(id);
+        }
+      });
+    }
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(true));
+    await().untilAtomic(closed, is(true));
+  }
+
+  @Test
+  public void testScoresAreSentInASingleBatch() {
+    deploy(InternalServiceVerticle.class.getName(), 9103);
+    int batches = InternalServiceVerticle.scoreBatchRequests.get();
+
+    sendScores();
+
+    await().until(() -> achieved.size() == players.size());
+    assertThat(InternalServiceVerticle.scoreBatchRequests.get()).isEqualTo(batches + 1);
+    await().until(() -> !(boolean) verticle.getProperty("batchInFlight"));
+    assertThat((Set<?>) verticle.getProperty("pendingPlayers")).isEmpty();
+    assertThat(verticle.getProperty("scoreBatchWindow")).isEqualTo(50);
+  }
+
+  @Test
+  public void testScoresAreSentOneByOneWithoutAnAchievementListPerPlayer() {
+    // Score server returning a single untagged list, whatever the number of players
+    AtomicBoolean listening = new AtomicBoolean();
+    HttpServer server = vertx.createHttpServer()
+        .requestHandler(request -> request.response().end(InternalServiceVerticle.defaultScore))
+        .listen(9104, ar -> listening.set(ar.succeeded()));
+    await().untilAtomic(listening, is(true));
+    verticle.setProperty("scorePort", server.actualPort());
+    verticle.setProperty("achievementPort", server.actualPort());
+
+    sendScores();
+
+    await().until(() -> achieved.size() == players.size());
+    assertThat(verticle.getProperty("scoreBatchWindow")).isEqualTo(0);
+    assertThat((Set<?>) verticle.getProperty("pendingPlayers")).isEmpty();
+  }
+
+  private void deploy(String verticleName, int port) {
+    AtomicBoolean deployed = new AtomicBoolean();
+    vertx.deployVerticle(verticleName, new DeploymentOptions().setConfig(new JsonObject().put("innerPort", port)),
+        ar -> deployed.set(ar.succeeded()));
+    await().untilAtomic(deployed, is(true));
+    verticle.setProperty("scorePort", port);
+    verticle.setProperty("achievementPort", port);
+  }
+
+  // Two scores per player, aggregated in the batch, sent from a Vert.x context like the socket frames
+  private void sendScores() {
+    vertx.runOnContext(v -> {
+      for (Object player : players) {
+        verticle.invokeMethod("sendScore", new Object[]{player, 10, 1, false});
+        verticle.invokeMethod("sendScore", new Object[]{player, 20, 2, true});
+      }
+    });
+  }
+}
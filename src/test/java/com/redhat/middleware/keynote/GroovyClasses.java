@@ -0,0 +1,35 @@
+package com.redhat.middleware.keynote;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyObject;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Loads the Groovy game classes ({@code src/main/groovy}, compiled on deployment) so the benchmarks can call them
+ * directly.
+ */
+class GroovyClasses {
+
+  private static final GroovyClassLoader LOADER = new GroovyClassLoader(GroovyClasses.class.getClassLoader());
+
+  static GroovyObject newInstance(String name, Object... args) {
+    try {
+      Class<?> clazz = LOADER.loadClass(name, true, false);
+      for (Constructor<?> constructor : clazz.getConstructors()) {
+        if (constructor.getParameterCount() == args.length) {
+          return (GroovyObject) constructor.newInstance(args);
+        }
+      }
+      throw new IllegalArgumentException("No constructor of " + name + " takes " + args.length + " arguments");
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot instantiate " + name, e);
+    }
+  }
+
+  static GroovyObject gameVerticle(io.vertx.core.Vertx vertx) {
+    GroovyObject verticle = newInstance("GameVerticle");
+    verticle.setProperty("vertx", new io.vertx.groovy.core.Vertx(vertx));
+    return verticle;
+  }
+}
@@ -0,0 +1,58 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KieCommandWriterTest {
+
+  @Test
+  public void testPlayerUpdateEscapesTheUsername() {
+    String username = "Bobby \"Tables\" \\ \n é😀";
+    JsonObject payload = KieCommandWriter.playerUpdate("p1", username, 2, 120, 7, true).toJsonObject();
+
+    assertThat(payload.getString("lookup")).isEqualTo("ScoreSession");
+    JsonArray commands = payload.getJsonArray("commands");
+    assertThat(commands).hasSize(3);
+
+    JsonObject player = commands.getJsonObject(0).getJsonObject("insert").getJsonObject("object")
+        .getJsonObject("com.redhatkeynote.score.Player");
+    assertThat(player.getString("uuid")).isEqualTo("p1");
+    assertThat(player.getString("username")).isEqualTo(username);
+    assertThat(player.getInteger("team")).isEqualTo(2);
+    assertThat(player.getInteger("score")).isEqualTo(120);
+    assertThat(player.getInteger("consecutivePops")).isEqualTo(7);
+    assertThat(player.getBoolean("goldenSnitch")).isTrue();
+
+    assertThat(commands.getJsonObject(1).getJsonObject("insert").getString("out-identifier"))
+        .isEqualTo("newAchievements");
+    assertThat(commands.getJsonObject(2).containsKey("fire-all-rules")).isTrue();
+  }
+
+  @Test
+  public void testBatch() {
+    KieCommandWriter writer = KieCommandWriter.scoreSession(2);
+    for (int i = 0; i < 2; i++) {
+      writer.player("p" + i, "Player " + i, i + 1, i * 1000, -i, false);
+      writer.achievementList("p" + i, "newAchievements-", i);
+    }
+    JsonArray commands = writer.end().toJsonObject().getJsonArray("commands");
+
+    assertThat(commands).hasSize(5);
+    assertThat(commands.getJsonObject(2).getJsonObject("insert").getJsonObject("object")
+        .getJsonObject("com.redhatkeynote.score.Player").getInteger("score")).isEqualTo(1000);
+    assertThat(commands.getJsonObject(3).getJsonObject("insert").getString("out-identifier"))
+        .isEqualTo("newAchievements-1");
+  }
+
+  @Test
+  public void testConstantPayloads() {
+    assertThat(KieCommandWriter.deleteScores().toJsonObject().getJsonArray("commands")).hasSize(3);
+    JsonObject summary = KieCommandWriter.scoreSummary(10).toJsonObject();
+    assertThat(summary.getString("lookup")).isEqualTo("SummarySession");
+    assertThat(summary.getJsonArray("commands").getJsonObject(0).getJsonObject("insert").getJsonObject("object")
+        .getJsonObject("com.redhatkeynote.score.ScoreSummary").getInteger("topPlayers")).isEqualTo(10);
+  }
+}
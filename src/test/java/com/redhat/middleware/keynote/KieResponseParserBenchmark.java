@@ -0,0 +1,75 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the full decoding of the score server responses, as done before, with the {@link KieResponseParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KieResponseParserBenchmark {
+
+  private final Buffer score = Buffer.buffer(InternalServiceVerticle.defaultScore);
+  private final Buffer scoreSummary = Buffer.buffer(InternalServiceVerticle.defaultScoreSummary);
+
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public Object achievementsFullDecode() {
+    Map response = Json.decodeValue(score.toString(), Map.class);
+    if ("SUCCESS".equals(response.get("type"))) {
+      Map execution = (Map) ((Map) response.get("result")).get("execution-results");
+      for (Object result : (List) execution.get("results")) {
+        Map entry = (Map) result;
+        if ("newAchievements".equals(entry.get("key"))) {
+          return ((Map) ((Map) entry.get("value")).get("com.redhatkeynote.score.AchievementList")).get("achievements");
+        }
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public Object achievementsStreaming() {
+    return KieResponseParser.extractResult(score, "newAchievements").getJsonArray("achievements");
+  }
+
+  @Benchmark
+  public Object scoreSummaryFullDecode() {
+    JsonObject response = scoreSummary.toJsonObject();
+    if ("SUCCESS".equals(response.getString("type"))) {
+      JsonArray results = response.getJsonObject("result").getJsonObject("execution-results").getJsonArray("results");
+      for (int index = 0; index < results.size(); index++) {
+        JsonObject result = results.getJsonObject(index);
+        if ("scoreSummary".equals(result.getString("key"))) {
+          return result.getJsonObject("value").getJsonObject("com.redhatkeynote.score.ScoreSummary");
+        }
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public Object scoreSummaryStreaming() {
+    return KieResponseParser.extractResult(scoreSummary, "scoreSummary");
+  }
+}
@@ -0,0 +1,36 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KieResponseParserTest {
+
+  @Test
+  public void testAchievements() {
+    Map<String, JsonObject> results = KieResponseParser.extractResults(
+        Buffer.buffer(InternalServiceVerticle.defaultScore), "newAchievements");
+
+    assertThat(results).containsOnlyKeys("newAchievements");
+    assertThat(results.get("newAchievements").getJsonArray("achievements")).isNotNull();
+  }
+
+  @Test
+  public void testScoreSummary() {
+    JsonObject summary = KieResponseParser.extractResult(
+        Buffer.buffer(InternalServiceVerticle.defaultScoreSummary), "scoreSummary");
+
+    assertThat(summary.getJsonArray("teamScores")).isNotNull();
+    assertThat(summary.getJsonArray("topPlayerScores")).isNotNull();
+  }
+
+  @Test
+  public void testFailure() {
+    Buffer body = Buffer.buffer("{\"type\":\"FAILURE\",\"msg\":\"Container not found\"}");
+    assertThat(KieResponseParser.extractResults(body, "newAchievements")).isNull();
+  }
+}
@@ -0,0 +1,286 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonObject;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates players and admins against a game server and reports the latency distributions.
+ * <p>
+ * Each player connects to {@code /game}, registers, then pops balloons with exponentially distributed intervals. The
+ * admins flip the game state between {@code play} and {@code pause}. The randomness is seeded so two runs with the
+ * same settings send the same traffic. Recorded latencies:
+ * <ul>
+ * <li>connect: from the connection request to the web socket being open</li>
+ * <li>id: from the web socket being open to the {@code id} message</li>
+ * <li>achievement: from the oldest unacknowledged score to the next {@code achievements} message (the game verticle
+ * aggregates the scores sent while a score server request is in flight)</li>
+ * </ul>
+ * By default the game server (with the {@code InternalServiceVerticle} stand-ins) is deployed in this JVM, the
+ * {@code SCORE_SERVER}, {@code ACHIEVEMENTS_SERVER} and related environment variables must then point to the
+ * stand-ins, as done by the {@code load} profile. Settings are read from the {@code load.*} system properties, see
+ * {@link #main(String[])}.
+ */
+public class LoadGenerator {
+
+  private static final String ADMIN_TOKEN = "CH2UsJePthRWTmLI8EY6";
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+  private final String host = System.getProperty("load.host", "localhost");
+  private final int port = Integer.getInteger("load.port", 9001);
+  private final boolean embedded = Boolean.parseBoolean(System.getProperty("load.embedded", "true"));
+  private final int players = Integer.getInteger("load.players", 100);
+  private final int admins = Integer.getInteger("load.admins", 1);
+  private final long rampUp = Long.getLong("load.ramp-up", 10000);
+  private final long popInterval = Long.getLong("load.pop-interval", 500);
+  private final long stateInterval = Long.getLong("load.state-interval", 15000);
+  private final long duration = Long.getLong("load.duration", 60);
+  private final long seed = Long.getLong("load.seed", 42);
+  private final String output = System.getProperty("load.output");
+
+  private final Histogram connect = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+  private final Histogram id = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+  private final Histogram achievement = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+  private final AtomicInteger connected = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicInteger pops = new AtomicInteger();
+
+  private volatile boolean running = true;
+
+  /**
+   * System properties:
+   * <ul>
+   * <li>{@code load.embedded}: deploy the game server in this JVM, {@code true} by default</li>
+   * <li>{@code load.host}, {@code load.port}: the game server, {@code localhost:9001} by default</li>
+   * <li>{@code load.players}: number of players, 100 by default</li>
+   * <li>{@code load.admins}: number of admins flipping the state, 1 by default</li>
+   * <li>{@code load.ramp-up}: time in ms over which the players connect, 10000 by default</li>
+   * <li>{@code load.pop-interval}: mean time in ms between two pops of a player, 500 by default</li>
+   * <li>{@code load.state-interval}: time in ms between two state changes, 15000 by default</li>
+   * <li>{@code load.duration}: duration of the run in seconds (ramp-up included), 60 by default</li>
+   * <li>{@code load.seed}: seed of the simulated traffic, 42 by default</li>
+   * <li>{@code load.output}: if set, the histograms are also written to {@code <output>-<name>.hgrm}</li>
+   * </ul>
+   */
+  public static void main(String[] args) throws Exception {
+    new LoadGenerator().run();
+    System.exit(0);
+  }
+
+  private void run() throws Exception {
+    Vertx server = null;
+    if (embedded) {
+      server = deployServer();
+    }
+    Vertx vertx = Vertx.vertx();
+
+    System.out.println("Simulating " + players + " players and " + admins + " admins against " + host + ":" + port
+        + " for " + duration + " s (seed " + seed + ")");
+
+    for (int i = 0; i < admins; i++) {
+      startAdmin(vertx, new Random(seed - i - 1));
+    }
+    long delay = players > 1 ? rampUp / (players - 1) : 0;
+    for (int i = 0; i < players; i++) {
+      Random random = new Random(seed + i);
+      vertx.setTimer(1 + i * delay, l -> startPlayer(vertx, random));
+    }
+
+    long periodic = vertx.setPeriodic(5000, l ->
+        System.out.println(connected.get() + " players connected, " + pops.get() + " pops, "
+            + achievement.getTotalCount() + " achievement round trips, " + failures.get() + " failures"));
+
+    Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+    running = false;
+    vertx.cancelTimer(periodic);
+
+    report();
+
+    close(vertx);
+    if (server != null) {
+      close(server);
+    }
+  }
+
+  private Vertx deployServer() throws Exception {
+    if (System.getenv("SCORE_SERVER_PORT") == null || System.getenv("ACHIEVEMENTS_SERVER_PORT") == null) {
+      throw new IllegalStateException("The embedded game server requires the SCORE_SERVER(_PORT) and "
+          + "ACHIEVEMENTS_SERVER(_PORT) environment variables, run with the load profile or set load.embedded=false");
+    }
+    CountDownLatch latch = new CountDownLatch(1);
+    Future<Vertx> deployed = Future.future();
+    Vertx.clusteredVertx(new VertxOptions(), v -> {
+      if (v.failed()) {
+        deployed.fail(v.cause());
+        latch.countDown();
+        return;
+      }
+      v.result().deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+          .put("port", port)), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(v.result());
+        } else {
+          deployed.fail(ar.cause());
+        }
+        latch.countDown();
+      });
+    });
+    latch.await();
+    if (deployed.failed()) {
+      throw new IllegalStateException("Cannot deploy the game server", deployed.cause());
+    }
+    return deployed.result();
+  }
+
+  private void startAdmin(Vertx vertx, Random random) {
+    vertx.createHttpClient().websocket(port, host, "/game/admin", socket -> {
+      socket.handler(buffer -> {
+      });
+      socket.writeFinalTextFrame(stateChange("start-game"));
+      long first = stateInterval + random.nextInt((int) Math.max(stateInterval / 10, 1));
+      vertx.setTimer(first, l -> flipState(vertx, socket, false));
+    }, t -> failures.incrementAndGet());
+  }
+
+  private void flipState(Vertx vertx, WebSocket socket, boolean play) {
+    if (!running) {
+      socket.close();
+      return;
+    }
+    socket.writeFinalTextFrame(stateChange(play ? "play" : "pause"));
+    vertx.setTimer(stateInterval, l -> flipState(vertx, socket, !play));
+  }
+
+  private static String stateChange(String state) {
+    return new JsonObject()
+        .put("type", "state-change")
+        .put("state", state)
+        .put("token", ADMIN_TOKEN)
+        .encode();
+  }
+
+  private void startPlayer(Vertx vertx, Random random) {
+    if (!running) {
+      return;
+    }
+    // One client (and connection) per player, as with browsers
+    HttpClient client = vertx.createHttpClient();
+    long connectStart = System.nanoTime();
+    client.websocket(port, host, "/game", socket -> {
+      long open = System.nanoTime();
+      connect.recordValue(micros(open - connectStart));
+      connected.incrementAndGet();
+      PlayerState state = new PlayerState();
+      socket.handler(buffer -> {
+        String type = buffer.toJsonObject().getString("type");
+        long now = System.nanoTime();
+        if ("id".equals(type)) {
+          id.recordValue(micros(now - open));
+        } else if ("configuration".equals(type) && !state.popping) {
+          state.popping = true;
+          scheduleNextPop(vertx, socket, random, state);
+        } else if ("achievements".equals(type) && state.pendingSince != 0) {
+          achievement.recordValue(micros(now - state.pendingSince));
+          state.pendingSince = 0;
+        }
+      });
+      socket.closeHandler(v -> {
+        state.closed = true;
+        connected.decrementAndGet();
+        client.close();
+      });
+      socket.exceptionHandler(t -> failures.incrementAndGet());
+      socket.writeFinalTextFrame("{}");
+    }, t -> {
+      failures.incrementAndGet();
+      client.close();
+    });
+  }
+
+  private void scheduleNextPop(Vertx vertx, WebSocket socket, Random random, PlayerState state) {
+    long delay = Math.max(1, (long) (-Math.log(1 - random.nextDouble()) * popInterval));
+    vertx.setTimer(delay, l -> {
+      if (state.closed) {
+        return;
+      }
+      if (!running) {
+        socket.close();
+        return;
+      }
+      state.consecutive = random.nextInt(4) == 0 ? 0 : state.consecutive + 1;
+      boolean goldenSnitch = random.nextInt(200) == 0;
+      state.score += goldenSnitch ? 50 : 1;
+      if (state.pendingSince == 0) {
+        state.pendingSince = System.nanoTime();
+      }
+      socket.writeFinalTextFrame(new JsonObject()
+          .put("type", "score")
+          .put("score", state.score)
+          .put("consecutive", state.consecutive)
+          .put("goldenSnitchPopped", goldenSnitch)
+          .encode());
+      pops.incrementAndGet();
+      scheduleNextPop(vertx, socket, random, state);
+    });
+  }
+
+  private void report() throws IOException {
+    System.out.println();
+    System.out.println(pops.get() + " pops, " + failures.get() + " failures");
+    report("connect", connect);
+    report("id", id);
+    report("achievement", achievement);
+  }
+
+  private void report(String name, Histogram histogram) throws IOException {
+    System.out.println(String.format("%-12s count=%d p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+        name, histogram.getTotalCount(),
+        millis(histogram.getValueAtPercentile(50)),
+        millis(histogram.getValueAtPercentile(90)),
+        millis(histogram.getValueAtPercentile(99)),
+        millis(histogram.getValueAtPercentile(99.9)),
+        millis(histogram.getMaxValue())));
+    if (output != null) {
+      try (PrintStream out = new PrintStream(new FileOutputStream(output + "-" + name + ".hgrm"))) {
+        histogram.outputPercentileDistribution(out, 1000.0);
+      }
+    }
+  }
+
+  private static long micros(long nanos) {
+    return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS);
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+
+  private static void close(Vertx vertx) throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    vertx.close(ar -> latch.countDown());
+    latch.await(30, TimeUnit.SECONDS);
+  }
+
+  // Only accessed from the context of the player socket
+  private static class PlayerState {
+    boolean popping;
+    boolean closed;
+    long pendingSince;
+    int score;
+    int consecutive;
+  }
+}
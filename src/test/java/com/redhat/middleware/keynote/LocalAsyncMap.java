@@ -0,0 +1,74 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.shareddata.AsyncMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for a cluster-wide map, the handlers are called right away. The time to live is ignored.
+ */
+class LocalAsyncMap<K, V> implements AsyncMap<K, V> {
+
+  final Map<K, V> entries = new ConcurrentHashMap<>();
+
+  @Override
+  public void get(K k, Handler<AsyncResult<V>> handler) {
+    handler.handle(Future.succeededFuture(entries.get(k)));
+  }
+
+  @Override
+  public void put(K k, V v, Handler<AsyncResult<Void>> handler) {
+    entries.put(k, v);
+    handler.handle(Future.succeededFuture());
+  }
+
+  @Override
+  public void put(K k, V v, long ttl, Handler<AsyncResult<Void>> handler) {
+    put(k, v, handler);
+  }
+
+  @Override
+  public void putIfAbsent(K k, V v, Handler<AsyncResult<V>> handler) {
+    handler.handle(Future.succeededFuture(entries.putIfAbsent(k, v)));
+  }
+
+  @Override
+  public void putIfAbsent(K k, V v, long ttl, Handler<AsyncResult<V>> handler) {
+    putIfAbsent(k, v, handler);
+  }
+
+  @Override
+  public void remove(K k, Handler<AsyncResult<V>> handler) {
+    handler.handle(Future.succeededFuture(entries.remove(k)));
+  }
+
+  @Override
+  public void removeIfPresent(K k, V v, Handler<AsyncResult<Boolean>> handler) {
+    handler.handle(Future.succeededFuture(entries.remove(k, v)));
+  }
+
+  @Override
+  public void replace(K k, V v, Handler<AsyncResult<V>> handler) {
+    handler.handle(Future.succeededFuture(entries.replace(k, v)));
+  }
+
+  @Override
+  public void replaceIfPresent(K k, V oldValue, V newValue, Handler<AsyncResult<Boolean>> handler) {
+    handler.handle(Future.succeededFuture(entries.replace(k, oldValue, newValue)));
+  }
+
+  @Override
+  public void clear(Handler<AsyncResult<Void>> handler) {
+    entries.clear();
+    handler.handle(Future.succeededFuture());
+  }
+
+  @Override
+  public void size(Handler<AsyncResult<Integer>> handler) {
+    handler.handle(Future.succeededFuture(entries.size()));
+  }
+}
@@ -0,0 +1,55 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.shareddata.Counter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for a cluster-wide counter, the handlers are called right away.
+ */
+class LocalCounter implements Counter {
+
+  final AtomicLong value;
+
+  LocalCounter(long value) {
+    this.value = new AtomicLong(value);
+  }
+
+  @Override
+  public void get(Handler<AsyncResult<Long>> handler) {
+    handler.handle(Future.succeededFuture(value.get()));
+  }
+
+  @Override
+  public void incrementAndGet(Handler<AsyncResult<Long>> handler) {
+    handler.handle(Future.succeededFuture(value.incrementAndGet()));
+  }
+
+  @Override
+  public void getAndIncrement(Handler<AsyncResult<Long>> handler) {
+    handler.handle(Future.succeededFuture(value.getAndIncrement()));
+  }
+
+  @Override
+  public void decrementAndGet(Handler<AsyncResult<Long>> handler) {
+    handler.handle(Future.succeededFuture(value.decrementAndGet()));
+  }
+
+  @Override
+  public void addAndGet(long delta, Handler<AsyncResult<Long>> handler) {
+    handler.handle(Future.succeededFuture(value.addAndGet(delta)));
+  }
+
+  @Override
+  public void getAndAdd(long delta, Handler<AsyncResult<Long>> handler) {
+    handler.handle(Future.succeededFuture(value.getAndAdd(delta)));
+  }
+
+  @Override
+  public void compareAndSet(long expected, long update, Handler<AsyncResult<Boolean>> handler) {
+    handler.handle(Future.succeededFuture(value.compareAndSet(expected, update)));
+  }
+}
@@ -0,0 +1,104 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+
+/**
+ * Hand-over between the game side and the socket side of a co-located player.
+ */
+public class LocalSessionTest {
+
+  private Vertx vertx;
+  private final List<Object> written = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(true));
+    await().untilAtomic(closed, is(true));
+  }
+
+  @Test
+  public void testMessagesSentBeforeAttachAreWrittenOnceAttached() {
+    LocalSession session = bind();
+    Broadcast broadcast = Broadcast.of(Collections.singletonMap("type", "heartbeat"));
+    assertThat(session.sendToSocket(Collections.singletonMap("type", "configuration"))).isTrue();
+    assertThat(session.sendToSocket(broadcast)).isTrue();
+
+    vertx.runOnContext(v -> {
+      session.attach(written::add);
+      // Written by the caller right after attaching
+      written.add("id");
+      session.sendToSocket(Collections.singletonMap("type", "state"));
+    });
+
+    await().until(() -> written.size() == 4);
+    assertThat(written.get(0)).isEqualTo("id");
+    assertThat(((JsonObject) written.get(1)).getString("type")).isEqualTo("configuration");
+    assertThat(written.get(2)).isSameAs(broadcast);
+    assertThat(((JsonObject) written.get(3)).getString("type")).isEqualTo("state");
+  }
+
+  @Test
+  public void testMessagesAreDroppedOnceDetached() {
+    LocalSession session = bind();
+    AtomicBoolean attached = new AtomicBoolean();
+    vertx.runOnContext(v -> {
+      session.attach(written::add);
+      attached.set(true);
+    });
+    await().untilAtomic(attached, is(true));
+
+    session.detach();
+
+    assertThat(session.sendToSocket(Collections.singletonMap("type", "state"))).isFalse();
+    assertThat(session.isAttached()).isFalse();
+  }
+
+  @Test
+  public void testUnboundSessionIsNotAttached() {
+    LocalSession session = bind();
+    session.unbind();
+    assertThat(session.sendToSocket(Collections.singletonMap("type", "state"))).isFalse();
+
+    AtomicBoolean attached = new AtomicBoolean();
+    vertx.runOnContext(v -> {
+      session.attach(written::add);
+      attached.set(true);
+    });
+    await().untilAtomic(attached, is(true));
+
+    assertThat(session.isAttached()).isFalse();
+    assertThat(LocalSession.lookup(session.id())).isNull();
+    assertThat(written).isEmpty();
+  }
+
+  // Bound from a context like the game verticle
+  private LocalSession bind() {
+    AtomicReference<LocalSession> session = new AtomicReference<>();
+    vertx.runOnContext(v -> session.set(LocalSession.bind("player", event -> {
+    }, (score, consecutive, goldenSnitchPopped) -> {
+    })));
+    await().untilAtomic(session, notNullValue());
+    return session.get();
+  }
+}
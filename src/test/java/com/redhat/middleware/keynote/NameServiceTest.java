@@ -0,0 +1,136 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class NameServiceTest {
+
+  private Vertx vertx1;
+  private Vertx vertx2;
+  private Counter blocks;
+
+  @Before
+  public void setUp() {
+    vertx1 = Vertx.vertx();
+    vertx2 = Vertx.vertx();
+    AtomicReference<Counter> counter = new AtomicReference<>();
+    vertx1.sharedData().getCounter(NameService.BLOCK_COUNTER_NAME, ar -> counter.set(ar.result()));
+    await().until(() -> counter.get() != null);
+    blocks = counter.get();
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean done1 = new AtomicBoolean();
+    AtomicBoolean done2 = new AtomicBoolean();
+    vertx1.close(ar -> done1.set(ar.succeeded()));
+    vertx2.close(ar -> done2.set(ar.succeeded()));
+    await().untilAtomic(done1, is(true));
+    await().untilAtomic(done2, is(true));
+  }
+
+  @Test
+  public void testNodesGenerateDistinctNames() {
+    // Same cluster counter, two nodes
+    NameService node1 = NameService.share(vertx1, blocks, null, 16, new PlayerNameCache(100, 60000));
+    NameService node2 = NameService.share(vertx2, blocks, null, 16, new PlayerNameCache(100, 60000));
+    assertThat(NameService.share(vertx1, blocks, null, 16, new PlayerNameCache(100, 60000))).isSameAs(node1);
+
+    List<String> names = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      vertx1.runOnContext(v -> node1.generate(names::add));
+      vertx2.runOnContext(v -> node2.generate(names::add));
+    }
+
+    await().until(() -> names.size() == 1000);
+    assertThat(names).doesNotHaveDuplicates().doesNotContainNull();
+    // One counter round-trip per block, not per name
+    assertThat(value()).isBetween(1000L / 16, 1000L / 16 + 4);
+  }
+
+  @Test
+  public void testReleasedNamesAreHandedOutOnceTheNameSpaceIsExhausted() {
+    // The next block starts at the end of the name space
+    LocalAsyncMap<String, Object> map = new LocalAsyncMap<>();
+    NameService service = NameService.share(vertx1, new LocalCounter(UserNameGenerator.capacity() / 2), map, 2,
+        new PlayerNameCache(100, 60000));
+    String id = UUID.randomUUID().toString();
+    String name = UserNameGenerator.generate(5);
+    service.register(id, name);
+    assertThat(generate(service)).endsWith(" 2");
+
+    service.release(id, name);
+    // Released twice, handed out once
+    service.release(id, name);
+
+    assertThat(map.entries).doesNotContainKey(id);
+    assertThat(generate(service)).isEqualTo(name);
+    assertThat(generate(service)).endsWith(" 2");
+  }
+
+  @Test
+  public void testNamesStillMappedAreNotHandedOutAgain() {
+    LocalAsyncMap<String, Object> map = new LocalAsyncMap<>();
+    NameService service = NameService.share(vertx1, new LocalCounter(UserNameGenerator.capacity() / 2), map, 2,
+        new PlayerNameCache(100, 60000));
+    String id = UUID.randomUUID().toString();
+    // Mapped to another name meanwhile
+    map.entries.put(id, UserNameGenerator.encode(UserNameGenerator.generate(6)));
+
+    service.release(id, UserNameGenerator.generate(5));
+
+    assertThat(generate(service)).endsWith(" 2");
+  }
+
+  @Test
+  public void testResetRestartsTheNameSequence() {
+    LocalAsyncMap<String, Object> map = new LocalAsyncMap<>();
+    LocalCounter counter = new LocalCounter(0);
+    NameService service = NameService.share(vertx1, counter, map, 16, new PlayerNameCache(100, 60000));
+    String id = UUID.randomUUID().toString();
+    for (int i = 0; i < 40; i++) {
+      service.register(id + i, generate(service));
+    }
+
+    AtomicBoolean reset = new AtomicBoolean();
+    service.reset(ar -> reset.set(ar.succeeded()));
+    await().untilAtomic(reset, is(true));
+
+    assertThat(map.entries).isEmpty();
+    await().until(() -> generate(service).equals(UserNameGenerator.generate(0)));
+    assertThat(generate(service)).isEqualTo(UserNameGenerator.generate(1));
+    AtomicReference<String> name = new AtomicReference<>("unknown");
+    service.lookup(id + 0, name::set);
+    await().untilAtomic(name, nullValue());
+  }
+
+  private static String generate(NameService service) {
+    AtomicReference<String> name = new AtomicReference<>();
+    service.generate(name::set);
+    await().untilAtomic(name, notNullValue());
+    return name.get();
+  }
+
+  private long value() {
+    AtomicLong value = new AtomicLong(-1);
+    blocks.get(ar -> value.set(ar.result()));
+    await().until(() -> value.get() != -1);
+    return value.get();
+  }
+}
@@ -0,0 +1,56 @@
+package com.redhat.middleware.keynote;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlayerNameCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  public void testLeastRecentlyUsedNameIsEvicted() {
+    PlayerNameCache cache = new PlayerNameCache(2, 60000, now::get);
+    String first = UUID.randomUUID().toString();
+    String second = UUID.randomUUID().toString();
+    String third = UUID.randomUUID().toString();
+
+    cache.put(first, "Prairie Boa");
+    cache.put(second, "Nettle Samurai");
+    assertThat(cache.get(first)).isEqualTo("Prairie Boa");
+    cache.put(third, "Great Foot 3");
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get(second)).isNull();
+    assertThat(cache.get(first)).isEqualTo("Prairie Boa");
+    assertThat(cache.get(third)).isEqualTo("Great Foot 3");
+  }
+
+  @Test
+  public void testIdleNameExpires() {
+    PlayerNameCache cache = new PlayerNameCache(10, 1000, now::get);
+    String id = UUID.randomUUID().toString();
+    cache.put(id, "Prairie Boa");
+
+    now.set(800);
+    assertThat(cache.get(id)).isEqualTo("Prairie Boa");
+    // Read at 800, still there at 1600
+    now.set(1600);
+    assertThat(cache.get(id)).isEqualTo("Prairie Boa");
+    now.set(2601);
+    assertThat(cache.get(id)).isNull();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void testUnsupportedFormatsAreNotCached() {
+    PlayerNameCache cache = new PlayerNameCache(10, 1000, now::get);
+    cache.put("not-a-uuid", "Prairie Boa");
+    cache.put(UUID.randomUUID().toString(), "Burr");
+
+    assertThat(cache.size()).isZero();
+  }
+}
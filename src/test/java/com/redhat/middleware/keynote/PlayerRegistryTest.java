@@ -0,0 +1,40 @@
+package com.redhat.middleware.keynote;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlayerRegistryTest {
+
+  @Test
+  public void testAddAndRemove() {
+    PlayerRegistry<String> registry = new PlayerRegistry<>();
+    registry.add("a", "player a");
+    registry.add("b", "player b");
+
+    assertThat(registry.size()).isEqualTo(2);
+    assertThat(registry.get("a")).isEqualTo("player a");
+    // Another player registered with the same id is kept
+    assertThat(registry.remove("a", "other player")).isFalse();
+    assertThat(registry.remove("a", "player a")).isTrue();
+    assertThat(registry.remove("a", "player a")).isFalse();
+    assertThat(registry).containsExactly("player b");
+  }
+
+  @Test
+  public void testRemoveWhileIterating() {
+    PlayerRegistry<String> registry = new PlayerRegistry<>();
+    for (int i = 0; i < 1000; i++) {
+      registry.add("id" + i, "player" + i);
+    }
+
+    int seen = 0;
+    for (String player : registry) {
+      registry.remove(player.replace("player", "id"), player);
+      seen++;
+    }
+
+    assertThat(seen).isEqualTo(1000);
+    assertThat(registry.size()).isZero();
+  }
+}
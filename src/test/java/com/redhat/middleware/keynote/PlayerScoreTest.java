@@ -0,0 +1,45 @@
+package com.redhat.middleware.keynote;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PlayerScoreTest {
+
+  @Test
+  public void testScoresAreAggregatedWhileInFlight() {
+    PlayerScore player = new PlayerScore();
+
+    // Idle, the first score is sent right away
+    assertThat(player.offerScore(10, 3, false)).isTrue();
+    long sent = player.takeScore();
+    assertThat(PlayerScore.score(sent)).isEqualTo(10);
+    assertThat(PlayerScore.consecutive(sent)).isEqualTo(3);
+    assertThat(PlayerScore.goldenSnitchPopped(sent)).isFalse();
+
+    // In flight, aggregated
+    assertThat(player.offerScore(60, 1, true)).isFalse();
+    assertThat(player.offerScore(55, 5, false)).isFalse();
+
+    // A score came in, sent again
+    assertThat(player.completeScore()).isFalse();
+    long aggregated = player.takeScore();
+    assertThat(PlayerScore.score(aggregated)).isEqualTo(60);
+    assertThat(PlayerScore.consecutive(aggregated)).isEqualTo(5);
+    assertThat(PlayerScore.goldenSnitchPopped(aggregated)).isTrue();
+
+    assertThat(player.completeScore()).isTrue();
+    assertThat(player.offerScore(1, 0, false)).isTrue();
+  }
+
+  @Test
+  public void testConsecutivePopsAreSaturated() {
+    PlayerScore player = new PlayerScore();
+    player.offerScore(Integer.MAX_VALUE, Integer.MAX_VALUE, true);
+
+    long packed = player.takeScore();
+    assertThat(PlayerScore.score(packed)).isEqualTo(Integer.MAX_VALUE);
+    assertThat(PlayerScore.consecutive(packed)).isEqualTo((1 << 29) - 1);
+    assertThat(PlayerScore.goldenSnitchPopped(packed)).isTrue();
+  }
+}
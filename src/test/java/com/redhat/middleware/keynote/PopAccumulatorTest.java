@@ -0,0 +1,129 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class PopAccumulatorTest {
+
+  private Vertx vertx;
+  private PopAccumulator accumulator;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    AtomicReference<PopAccumulator> created = new AtomicReference<>();
+    vertx.runOnContext(v -> vertx.sharedData().getCounter(PopAccumulator.EPOCH_COUNTER_NAME, ar -> {
+      // Long interval, the tests flush explicitly
+      created.set(PopAccumulator.share(vertx, ar.result(), 1, 3600000));
+    }));
+    await().until(() -> created.get() != null && created.get().ready());
+    accumulator = created.get();
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean done = new AtomicBoolean();
+    vertx.close(ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+  }
+
+  @Test
+  public void testConcurrentPopsAreFlushedExactly() throws InterruptedException {
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          accumulator.pop(1);
+          if (j % 1000 == 0) {
+            accumulator.flush();
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    accumulator.flush();
+
+    await().until(() -> value(0) == 40000);
+    assertThat(accumulator.pending(1)).isZero();
+  }
+
+  @Test
+  public void testResetStartsNewCounters() {
+    accumulator.pop(1);
+    accumulator.flush();
+    await().until(() -> value(0) == 1);
+
+    accumulator.pop(1);
+    accumulator.pop(1);
+    AtomicLong epoch = new AtomicLong(-1);
+    accumulator.reset(ar -> epoch.set(ar.result()));
+    await().until(() -> epoch.get() == 1 && accumulator.epoch() == 1 && accumulator.ready());
+    // The pending pops have been discarded
+    accumulator.flush();
+    accumulator.pop(1);
+    accumulator.flush();
+
+    await().until(() -> value(1) == 1);
+    assertThat(value(0)).isEqualTo(1);
+  }
+
+  @Test
+  public void testCountersOfTwoEpochsAgoAreReused() {
+    accumulator.pop(1);
+    accumulator.flush();
+    await().until(() -> value(0) == 1);
+
+    for (long next = 1; next <= 2; next++) {
+      long expected = next;
+      AtomicLong epoch = new AtomicLong(-1);
+      accumulator.reset(ar -> epoch.set(ar.result()));
+      await().until(() -> epoch.get() == expected && accumulator.epoch() == expected && accumulator.ready());
+    }
+
+    assertThat(PopAccumulator.counterPrefix(2)).isEqualTo(PopAccumulator.counterPrefix(0));
+    // Cleared when entering the epoch
+    assertThat(value(2)).isZero();
+    accumulator.pop(1);
+    accumulator.flush();
+    await().until(() -> value(2) == 1);
+  }
+
+  @Test
+  public void testFlushInFlightDuringResetIsNotCountedInTheNewEpoch() {
+    accumulator.pop(1);
+    accumulator.flush();
+    accumulator.enter(1);
+    await().until(accumulator::ready);
+    accumulator.pop(1);
+    accumulator.flush();
+
+    await().until(() -> value(0) == 1);
+    await().until(() -> value(1) == 1);
+  }
+
+  @Test
+  public void testSharedByVertxInstance() {
+    assertThat(PopAccumulator.share(vertx, null, 1, 1000)).isSameAs(accumulator);
+  }
+
+  private long value(long epoch) {
+    AtomicLong value = new AtomicLong(-1);
+    vertx.sharedData().getCounter(PopAccumulator.counterPrefix(epoch) + ".1",
+        ar -> ar.result().get(get -> value.set(get.result())));
+    await().until(() -> value.get() != -1);
+    return value.get();
+  }
+}
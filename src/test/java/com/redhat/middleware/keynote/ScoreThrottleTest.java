@@ -0,0 +1,68 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ScoreThrottleTest {
+
+  private Vertx vertx;
+  private final List<Object> forwarded = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean done = new AtomicBoolean();
+    vertx.close(ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+  }
+
+  @Test
+  public void testFramesAboveTheRateAreMerged() {
+    ScoreThrottle throttle = new ScoreThrottle(vertx, 10, 2, forwarded::add);
+    throttle.offer("frame-1", 10, 1, false);
+    throttle.offer("frame-2", 20, 2, false);
+    throttle.offer("frame-3", 70, 1, true);
+    throttle.offer("frame-4", 30, 5, false);
+    throttle.offer("frame-5", 40, 2, false);
+
+    // The burst as is, then the merged frames once a token is available
+    assertThat(forwarded).containsExactly("frame-1", "frame-2");
+    await().until(() -> forwarded.size() == 3);
+    assertThat(forwarded.get(2)).isEqualTo(ScoreThrottle.merged(70, 5, true, 3));
+  }
+
+  @Test
+  public void testSingleFrameAboveTheRateIsForwardedAsIs() {
+    ScoreThrottle throttle = new ScoreThrottle(vertx, 10, 1, forwarded::add);
+    throttle.offer("frame-1", 10, 1, false);
+    throttle.offer("frame-2", 20, 2, false);
+
+    await().until(() -> forwarded.size() == 2);
+    assertThat(forwarded).containsExactly("frame-1", "frame-2");
+  }
+
+  @Test
+  public void testPendingFramesAreDroppedOnClose() throws InterruptedException {
+    ScoreThrottle throttle = new ScoreThrottle(vertx, 10, 1, forwarded::add);
+    throttle.offer("frame-1", 10, 1, false);
+    throttle.offer("frame-2", 20, 2, false);
+    throttle.close();
+
+    Thread.sleep(300);
+    assertThat(forwarded).containsExactly("frame-1");
+  }
+}
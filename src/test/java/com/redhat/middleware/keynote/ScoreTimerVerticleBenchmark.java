@@ -0,0 +1,54 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembly of the team scores published by the score timer, from the score summary returned by the score server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreTimerVerticleBenchmark {
+
+  @Param({"4", "16"})
+  int numTeams;
+
+  private JsonArray teamScores;
+
+  @Setup
+  public void setUp() {
+    teamScores = new JsonArray();
+    // The summary only contains the teams with players, in any order
+    for (int team = numTeams; team > 1; team--) {
+      teamScores.add(new JsonObject().put("team", team).put("score", team * 1000));
+    }
+  }
+
+  @Benchmark
+  public List<JsonObject> orderTeamScores() {
+    return ScoreTimerVerticle.orderTeamScores(teamScores, numTeams);
+  }
+
+  @Benchmark
+  public String encodeTeamScores() {
+    return new JsonArray(ScoreTimerVerticle.orderTeamScores(teamScores, numTeams)).encode();
+  }
+}
@@ -0,0 +1,87 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+
+public class ScoreTimerVerticleTest {
+
+  @Test
+  public void testOnlyAchievedAchievementsAreKept() {
+    JsonArray response = new JsonArray()
+        .add(new JsonObject().put("achievementType", "TOP_SCORE").put("achieved", true))
+        .add(new JsonObject().put("achievementType", "POPS").put("achieved", false))
+        .add(new JsonObject().put("type", "LEGACY"));
+
+    assertThat(ScoreTimerVerticle.toAchievements(response))
+        .isEqualTo(new JsonObject().put("TOP_SCORE", true));
+    assertThat(ScoreTimerVerticle.toAchievements(new JsonArray(InternalServiceVerticle.defaultPlayerAchievements)))
+        .isEqualTo(new JsonObject().put("TOP_SCORE", true));
+  }
+
+  @Test
+  public void testScoreServerConnectionIsReusedAcrossTicks() {
+    Vertx vertx = Vertx.vertx();
+    try {
+      JsonObject config = new JsonObject().put("innerPort", 9102).put("interval", 20L);
+      AtomicBoolean deployed = new AtomicBoolean();
+      vertx.deployVerticle(InternalServiceVerticle.class.getName(), new DeploymentOptions().setConfig(config), ar ->
+          vertx.deployVerticle(ScoreTimerVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+              v -> deployed.set(v.succeeded())));
+      await().untilAtomic(deployed, is(true));
+
+      int connections = InternalServiceVerticle.connections.get();
+      int requests = InternalServiceVerticle.scoreSummaryRequests.get();
+      long polls = GameMetrics.SCORE_POLL.getCount();
+      await().until(() -> InternalServiceVerticle.scoreSummaryRequests.get() >= requests + 20);
+
+      // One connection for the score client and one for the achievement client, opened on the first tick
+      assertThat(InternalServiceVerticle.connections.get()).isLessThanOrEqualTo(connections + 2);
+      assertThat(GameMetrics.SCORE_POLL.getCount()).isGreaterThanOrEqualTo(polls + 19);
+    } finally {
+      AtomicBoolean closed = new AtomicBoolean();
+      vertx.close(ar -> closed.set(true));
+      await().untilAtomic(closed, is(true));
+    }
+  }
+
+  @Test
+  public void testLeaderLockIsNotHeldAfterUndeploy() {
+    Vertx vertx = Vertx.vertx();
+    try {
+      JsonObject config = new JsonObject().put("innerPort", 9105).put("interval", 20L).put("leader-retry", 20L);
+      AtomicReference<String> leader = new AtomicReference<>();
+      AtomicReference<String> follower = new AtomicReference<>();
+      vertx.deployVerticle(InternalServiceVerticle.class.getName(), new DeploymentOptions().setConfig(config), ar ->
+          vertx.deployVerticle(ScoreTimerVerticle.class.getName(), new DeploymentOptions().setConfig(config), l -> {
+            leader.set(l.result());
+            vertx.deployVerticle(ScoreTimerVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                f -> follower.set(f.result()));
+          }));
+      await().untilAtomic(follower, notNullValue());
+
+      // The follower keeps trying meanwhile
+      AtomicBoolean undeployed = new AtomicBoolean();
+      vertx.undeploy(follower.get(), f -> vertx.undeploy(leader.get(), l -> undeployed.set(l.succeeded())));
+      await().untilAtomic(undeployed, is(true));
+
+      AtomicBoolean locked = new AtomicBoolean();
+      vertx.sharedData().getLockWithTimeout(ScoreTimerVerticle.LEADER_LOCK, 1000, ar -> locked.set(ar.succeeded()));
+      await().untilAtomic(locked, is(true));
+    } finally {
+      AtomicBoolean closed = new AtomicBoolean();
+      vertx.close(ar -> closed.set(true));
+      await().untilAtomic(closed, is(true));
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.http.WebSocketFrame;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the frames received from the player sockets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerVerticleBenchmark {
+
+  private final WebSocketFrame textScore = WebSocketFrame.textFrame(
+      "{\"type\":\"score\",\"score\":120,\"consecutive\":7,\"goldenSnitchPopped\":false}", true);
+  private final WebSocketFrame textRegister = WebSocketFrame.textFrame(
+      "{\"type\":\"register\",\"id\":\"" + UUID.randomUUID() + "\",\"team\":2}", true);
+  private final WebSocketFrame binaryScore = WebSocketFrame.binaryFrame(
+      BinaryProtocol.encodeScore(120, 7, false), true);
+
+  @Benchmark
+  public JsonObject textScore() {
+    return ServerVerticle.toJson(textScore);
+  }
+
+  @Benchmark
+  public JsonObject textRegister() {
+    return ServerVerticle.toJson(textRegister);
+  }
+
+  @Benchmark
+  public JsonObject binaryScore() {
+    return ServerVerticle.toJson(binaryScore);
+  }
+}
@@ -0,0 +1,94 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+
+/**
+ * Team subscriptions of the server verticle, the game verticle is replaced by a consumer assigning the players to
+ * team 1.
+ */
+public class ServerVerticleTest {
+
+  private Vertx vertx;
+  private HttpClient client;
+  private final AtomicInteger ids = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    vertx.eventBus().<JsonObject>consumer("player", message -> message.reply("player-" + ids.incrementAndGet(),
+        new DeliveryOptions().addHeader(Broadcast.TEAM_HEADER, "1")));
+    AtomicBoolean deployed = new AtomicBoolean();
+    vertx.deployVerticle(ServerVerticle.class.getName(),
+        new DeploymentOptions().setConfig(new JsonObject().put("port", 9106).put("colocated-routing", false)),
+        ar -> deployed.set(ar.succeeded()));
+    await().untilAtomic(deployed, is(true));
+    client = vertx.createHttpClient();
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(true));
+    await().untilAtomic(closed, is(true));
+  }
+
+  @Test
+  public void testTeamTopicIsLeftWithTheLastSocket() {
+    WebSocket first = connect();
+    WebSocket second = connect();
+    await().until(() -> teamTopic() == ReplyFailure.TIMEOUT);
+
+    first.close();
+    // Still subscribed for the second socket
+    await().until(() -> teamTopic() == ReplyFailure.TIMEOUT);
+
+    second.close();
+    await().until(() -> teamTopic() == ReplyFailure.NO_HANDLERS);
+  }
+
+  private WebSocket connect() {
+    AtomicReference<WebSocket> registered = new AtomicReference<>();
+    client.websocket(9106, "localhost", "/game", socket -> {
+      socket.handler(buffer -> {
+        if ("id".equals(buffer.toJsonObject().getString("type"))) {
+          registered.set(socket);
+        }
+      });
+      socket.writeFinalTextFrame("{}");
+    });
+    await().untilAtomic(registered, notNullValue());
+    return registered.get();
+  }
+
+  /**
+   * @return how a point-to-point message to the team topic fails: {@code TIMEOUT} if a consumer is registered (it
+   * does not reply), {@code NO_HANDLERS} otherwise
+   */
+  private ReplyFailure teamTopic() {
+    AtomicReference<ReplyFailure> failure = new AtomicReference<>();
+    vertx.eventBus().send(Broadcast.teamAddress(1),
+        Broadcast.of(Collections.singletonMap("type", "heartbeat")), new DeliveryOptions().setSendTimeout(200),
+        ar -> failure.set(((ReplyException) ar.cause()).failureType()));
+    await().untilAtomic(failure, notNullValue());
+    return failure.get();
+  }
+}
@@ -0,0 +1,86 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TeamBalancerTest {
+
+  private Vertx vertx;
+  private TeamBalancer balancer;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+    for (int team = 1; team <= 4; team++) {
+      int number = team;
+      vertx.sharedData().getCounter("redhat.team." + team, ar -> counters.put(number, ar.result()));
+    }
+    await().until(() -> counters.size() == 4);
+    balancer = new TeamBalancer(counters, 2);
+  }
+
+  @After
+  public void tearDown() {
+    AtomicBoolean done = new AtomicBoolean();
+    vertx.close(ar -> done.set(ar.succeeded()));
+    await().untilAtomic(done, is(true));
+  }
+
+  @Test
+  public void testNewPlayersAreSpreadEvenly() {
+    for (int i = 0; i < 50; i++) {
+      balancer.assign(0);
+    }
+
+    for (int team = 1; team <= 4; team++) {
+      assertThat(balancer.players(team)).isBetween(12L, 13L);
+    }
+  }
+
+  @Test
+  public void testPlayersLeavingAreReplaced() {
+    for (int i = 0; i < 40; i++) {
+      balancer.assign(0);
+    }
+    for (int i = 0; i < 5; i++) {
+      balancer.leave(3);
+    }
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(balancer.assign(0)).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void testReturningPlayerKeepsItsTeamWithinTheBound() {
+    assertThat(balancer.assign(2)).isEqualTo(2);
+    assertThat(balancer.assign(2)).isEqualTo(2);
+    assertThat(balancer.assign(2)).isEqualTo(2);
+    // 3 players above the others
+    assertThat(balancer.assign(2)).isNotEqualTo(2);
+  }
+
+  @Test
+  public void testPlayersOfTheOtherNodesAreCounted() {
+    balancer.update(1, 10);
+    balancer.update(2, 10);
+    balancer.update(3, 10);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(balancer.assign(0)).isEqualTo(4);
+    }
+    assertThat(balancer.players(1)).isEqualTo(10);
+  }
+}
@@ -0,0 +1,68 @@
+package com.redhat.middleware.keynote;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selection of the players receiving a configuration sent to a percentage of the traffic, with the hash based
+ * sampling and with the previous shuffle of the player list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrafficSamplerBenchmark {
+
+  @Param({"50000"})
+  int teamSize;
+
+  @Param({"20", "80"})
+  int trafficPercentage;
+
+  private List<String> players;
+
+  @Setup
+  public void setUp() {
+    players = new ArrayList<>(teamSize);
+    for (int i = 0; i < teamSize; i++) {
+      players.add(UUID.randomUUID().toString());
+    }
+  }
+
+  @Benchmark
+  public void hashSampling(Blackhole blackhole) {
+    for (String player : players) {
+      if (TrafficSampler.isSampled(player, trafficPercentage)) {
+        blackhole.consume(player);
+      }
+    }
+  }
+
+  @Benchmark
+  public void shuffle(Blackhole blackhole) {
+    Collections.shuffle(players, new Random(System.nanoTime()));
+    int numPlayers = (int) Math.ceil(players.size() * (trafficPercentage / 100.0));
+    for (String player : new ArrayList<>(players.subList(0, numPlayers))) {
+      blackhole.consume(player);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.redhat.middleware.keynote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrafficSamplerTest {
+
+  @Test
+  public void testSampleSize() {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      ids.add(UUID.randomUUID().toString());
+    }
+
+    assertThat(count(ids, 20)).isBetween(19000, 21000);
+    assertThat(count(ids, 0)).isZero();
+    assertThat(count(ids, 100)).isEqualTo(ids.size());
+  }
+
+  @Test
+  public void testPlayersStayInTheSample() {
+    for (int i = 0; i < 1000; i++) {
+      String id = UUID.randomUUID().toString();
+      boolean sampled = TrafficSampler.isSampled(id, 20);
+      assertThat(TrafficSampler.isSampled(id, 20)).isEqualTo(sampled);
+      if (sampled) {
+        assertThat(TrafficSampler.isSampled(id, 50)).isTrue();
+      }
+    }
+  }
+
+  private static int count(List<String> ids, double percentage) {
+    int count = 0;
+    for (String id : ids) {
+      if (TrafficSampler.isSampled(id, percentage)) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
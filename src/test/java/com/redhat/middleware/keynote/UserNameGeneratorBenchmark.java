@@ -0,0 +1,86 @@
+package com.redhat.middleware.keynote;
+
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name allocation by the {@link NameService} depending on the occupancy of the name space: the block counter starts
+ * at the given fraction of the name space, {@code 1} once all the names have been used. The counter and the name map
+ * are in-memory stand-ins, so the block leases and the releases are measured without the cluster round-trips.
+ * {@link #churn()} releases the name of a leaving player for each player joining, once the name space is exhausted the
+ * released name is handed out again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class UserNameGeneratorBenchmark {
+
+  private static final int BLOCK_SIZE = 1024;
+
+  @Param({"0", "0.9", "1"})
+  double occupancy;
+
+  private Vertx vertx;
+  private NameService service;
+  private String generated;
+  // Ids of the players joining, generated up front
+  private final String[] ids = new String[4096];
+  private int joined;
+  private String leavingId;
+  private String leavingName;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    // The service is shared by Vert.x instance, a new one starts from the given occupancy
+    vertx = Vertx.vertx();
+    long blocks = (long) Math.ceil(UserNameGenerator.capacity() * occupancy / BLOCK_SIZE);
+    service = NameService.share(vertx, new LocalCounter(blocks), new LocalAsyncMap<>(), BLOCK_SIZE,
+        new PlayerNameCache(20000, 3600000));
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = UUID.randomUUID().toString();
+    }
+    // Not numbered, handed out again once released
+    leavingId = ids[0];
+    leavingName = UserNameGenerator.generate(0);
+    service.register(leavingId, leavingName);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public String generate() {
+    service.generate(name -> generated = name);
+    return generated;
+  }
+
+  @Benchmark
+  public String churn() {
+    service.release(leavingId, leavingName);
+    service.generate(name -> generated = name);
+    leavingId = ids[++joined & (ids.length - 1)];
+    leavingName = generated;
+    service.register(leavingId, leavingName);
+    return leavingName;
+  }
+}
@@ -17,11 +17,33 @@ public class UserNameGeneratorTest {
   public void testGenerationOfNames() {
     Set<String> names = new HashSet<>();
     for(int i = 0; i < 50000; i++) {
-      names.add(UserNameGenerator.generate());
+      names.add(UserNameGenerator.generate(i));
     }
 
     assertThat(names).hasSize(50000);
     assertThat(names).doesNotContain("", null);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testNamesAreUniqueBeyondTheNameSpace() {
+    int count = UserNameGenerator.capacity() + 1000;
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      names.add(UserNameGenerator.generate(i));
+    }
+
+    assertThat(names).hasSize(count);
+    assertThat(UserNameGenerator.generate(UserNameGenerator.capacity())).endsWith(" 2");
+  }
+
+  @Test
+  public void testNamesAreEncodedInALong() {
+    for (int i = 0; i < UserNameGenerator.capacity() + 10; i++) {
+      String name = UserNameGenerator.generate(i);
+      assertThat(UserNameGenerator.decode(UserNameGenerator.encode(name))).isEqualTo(name);
+    }
+    assertThat(UserNameGenerator.encode("Burr")).isEqualTo(-1);
+    assertThat(UserNameGenerator.encode("Prairie Boa 1")).isEqualTo(-1);
+    assertThat(UserNameGenerator.encode("Prairie Boa x")).isEqualTo(-1);
+  }
+}